@@ -0,0 +1,58 @@
+package stateMachine;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * The graph loader as it was before {@link GraphReader}: a {@link Scanner}
+ * over the lines, regular expression splits and a linear scan for every node
+ * name. It builds the same graph and only serves as the baseline of
+ * {@link ParseBenchmark}.
+ */
+final class BaselineReader {
+    private BaselineReader() {}
+
+    static StateMachine.Graph read(InputStream is) {
+        StateMachine.Graph graph = new StateMachine.Graph();
+        List<String> names = new ArrayList<>();
+        try (Scanner scanner = new Scanner(is)) {
+            while (scanner.hasNextLine()) {
+                String line = scanner.nextLine();
+                if (line.contains("=")) {
+                    String[] symbols = line.split("[ =]+");
+                    if (symbols[0].toLowerCase().equals("lambda")) {
+                        graph.setLambda(symbols[1]);
+                        continue;
+                    }
+                    if (symbols[0].toLowerCase().equals("initnode")) {
+                        graph.setInitNode(symbols[1]);
+                        continue;
+                    }
+                }
+                String[] symbols = line.split("[ ]+");
+                int index1 = nodeIndex(graph, names, symbols[0], symbols.length != 3);
+                if (symbols.length > 2) {
+                    int index2 = nodeIndex(graph, names, symbols[1], false);
+                    graph.addEdge(index1, index2, symbols[2].equals(graph.getLambda()) ? -1 :
+                            graph.addSymbol(symbols[2]));
+                }
+            }
+        }
+        return graph;
+    }
+
+    private static int nodeIndex(StateMachine.Graph graph, List<String> names, String name,
+                                 boolean isFinal) {
+        int index = names.indexOf(name);
+        if (index == -1) {
+            names.add(name);
+            index = graph.addNode(name);
+        }
+        if (isFinal) {
+            graph.setFinal(index);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,53 @@
+package stateMachine;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeterminizeBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int states;
+    @Param({"4"})
+    public int alphabetSize;
+    @Param({"8"})
+    public int blockSize;
+    @Param({"2"})
+    public int branching;
+    @Param({"0.1"})
+    public double lambdaDensity;
+    @Param({"0.2"})
+    public double finalRatio;
+
+    private StateMachine.Graph nfa;
+    private StateMachine.Graph graph;
+
+    @Setup
+    public void setup() {
+        nfa = RandomAutomata.parse(RandomAutomata.nondeterministic(states, alphabetSize,
+                blockSize, branching, lambdaDensity, finalRatio, 42));
+    }
+
+    @Setup(Level.Invocation)
+    public void copy() {
+        graph = StateMachine.Graph.copy(nfa);
+    }
+
+    @Benchmark
+    public Object determinize() {
+        graph.determinize(true);
+        return graph;
+    }
+
+    @Benchmark
+    public Object determinizeParallel() {
+        graph.determinize(true, ForkJoinPool.commonPool());
+        return graph;
+    }
+}
@@ -0,0 +1,85 @@
+package stateMachine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+
+/**
+ * Randomized check of the {@link GraphExporter.Format#INPUT} export: random
+ * graphs, as parsed, determinized and minimized, are written in full and read
+ * back with {@link GraphReader}. The copy must accept the same language, and
+ * have a node under the comma-joined name of every node that has an edge,
+ * is the target of one or is final, and no other. Run with {@code java -cp target/classes
+ * stateMachine.ExportCheck [graphs]}; it throws on the first mismatch.
+ */
+public final class ExportCheck {
+    private ExportCheck() {}
+
+    public static void main(String[] args) throws IOException {
+        int graphs = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        GraphExporter exporter = new GraphExporter(GraphExporter.Format.INPUT);
+        for (int seed = 0; seed < graphs; seed++) {
+            Random random = new Random(seed);
+            int states = 2 + random.nextInt(60), alphabetSize = 1 + random.nextInt(3);
+            StateMachine.Graph graph = RandomAutomata.parse(RandomAutomata.generate(states,
+                    alphabetSize, random.nextDouble() * 0.3, random.nextDouble() * 0.5, seed));
+            check(exporter, graph, seed, "parsed");
+            graph.determinize(random.nextBoolean());
+            check(exporter, graph, seed, "determinized");
+            check(exporter, StateMachine.Graph.minimize(graph, OutputStream.nullOutputStream(),
+                    StateMachine.Graph.MinimizeEngine.HOPCROFT), seed, "minimized");
+        }
+        System.out.println(graphs * 3 + " exports of " + graphs + " graphs read back");
+    }
+
+    private static void check(GraphExporter exporter, StateMachine.Graph graph, int seed,
+                              String stage) throws IOException {
+        StringWriter text = new StringWriter();
+        exporter.export(graph, text);
+        StateMachine.Graph copy = GraphReader.read(new StringReader(text.toString()));
+        if (!Equivalence.equivalent(graph, copy)) {
+            throw new IllegalStateException("seed " + seed + ", " + stage + ": language differs, " +
+                    Equivalence.counterexample(graph, copy));
+        }
+        boolean[] target = new boolean[graph.nodeCount()];
+        for (int node = 0; node < graph.nodeCount(); node++) {
+            graph.forEachEdge(node, (symbol, to) -> target[to] = true);
+        }
+        int expected = 0;
+        for (int node = 0; node < graph.nodeCount(); node++) {
+            boolean hasEdge = hasEdge(graph, node);
+            if (!hasEdge && !target[node] && !graph.isFinal(node)) {
+                continue;
+            }
+            expected++;
+            String name = String.join(",", graph.nodeName(node));
+            int found = find(copy, name);
+            if (found < 0 || copy.isFinal(found) != graph.isFinal(node) ||
+                    hasEdge(copy, found) != hasEdge) {
+                throw new IllegalStateException("seed " + seed + ", " + stage + ": node " + name +
+                        " does not read back");
+            }
+        }
+        if (copy.nodeCount() != expected) {
+            throw new IllegalStateException("seed " + seed + ", " + stage + ": " +
+                    copy.nodeCount() + " nodes read back, " + expected + " written");
+        }
+    }
+
+    private static boolean hasEdge(StateMachine.Graph graph, int node) throws IOException {
+        boolean[] found = new boolean[1];
+        graph.forEachEdge(node, (symbol, target) -> found[0] = true);
+        return found[0];
+    }
+
+    private static int find(StateMachine.Graph graph, String name) {
+        for (int node = 0; node < graph.nodeCount(); node++) {
+            if (graph.nodeName(node).size() == 1 && graph.nodeName(node).first().equals(name)) {
+                return node;
+            }
+        }
+        return -1;
+    }
+}
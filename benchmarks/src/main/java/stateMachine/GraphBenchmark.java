@@ -0,0 +1,52 @@
+package stateMachine;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GraphBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int states;
+    @Param({"4"})
+    public int alphabetSize;
+    @Param({"0.05"})
+    public double lambdaDensity;
+    @Param({"0.2"})
+    public double finalRatio;
+
+    private StateMachine.Graph graph;
+
+    @Setup
+    public void setup() {
+        graph = RandomAutomata.parse(RandomAutomata.generate(states, alphabetSize,
+                lambdaDensity, finalRatio, 42));
+    }
+
+    @Benchmark
+    public Object copy() {
+        return StateMachine.Graph.copy(graph);
+    }
+
+    @Benchmark
+    public void printGraph() {
+        graph.printGraph(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void exportDot() throws IOException {
+        new GraphExporter(GraphExporter.Format.DOT).export(graph, OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void exportInput() throws IOException {
+        new GraphExporter(GraphExporter.Format.INPUT).export(graph, OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,120 @@
+package stateMachine;
+
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Random;
+
+/**
+ * Randomized check of {@link IncrementalDfa}: every edit is also applied to a
+ * snapshot taken before it, which is then cut to its reachable states and
+ * minimized from scratch with {@link StateMachine.Graph#minimize} on its
+ * Hopcroft engine; the incremental automaton must have as many states and
+ * accept the same language. Run with {@code java -cp target/classes
+ * stateMachine.IncrementalCheck [automata] [edits]}; it throws on the first
+ * mismatch.
+ */
+public final class IncrementalCheck {
+    private IncrementalCheck() {}
+
+    public static void main(String[] args) {
+        int automata = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int edits = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+        long checked = 0;
+        for (int seed = 0; seed < automata; seed++) {
+            Random random = new Random(seed);
+            int states = 2 + random.nextInt(40), alphabetSize = 1 + random.nextInt(3);
+            StateMachine.Graph graph = RandomAutomata.parse(RandomAutomata.generate(states,
+                    alphabetSize, 0, random.nextDouble() * 0.5, seed));
+            IncrementalDfa dfa = graph.incremental();
+            CompiledDfa compiled = dfa.compile();
+            String[] alphabet = new String[compiled.symbolCount()];
+            for (int a = 0; a < alphabet.length; a++) {
+                alphabet[a] = compiled.symbol(a);
+            }
+            check(dfa, alphabet, reachable(dfa.toDfa()), seed, -1);
+            for (int e = 0; e < edits; e++) {
+                edit(dfa, alphabet, random, seed, e);
+                checked++;
+            }
+        }
+        System.out.println(checked + " edits on " + automata + " automata match minimize from scratch");
+    }
+
+    /** Applies one random edit to {@code dfa} and to a snapshot of it, then compares them. */
+    private static void edit(IncrementalDfa dfa, String[] alphabet, Random random, int seed, int e) {
+        int[] live = dfa.states();
+        Dfa before = dfa.toDfa();
+        int[] table = before.transitions.clone();
+        boolean[] finals = before.finals.clone();
+        int k = alphabet.length, from = random.nextInt(live.length), a = random.nextInt(k);
+        int kind = random.nextInt(10);
+        if (kind < 5) {
+            // copying a target of another state makes merges likely
+            int other = random.nextInt(live.length), b = random.nextInt(k);
+            int to = random.nextBoolean() ? table[other * k + b] : random.nextInt(live.length);
+            if (to < 0) {
+                to = other;
+            }
+            table[from * k + a] = to;
+            dfa.setTransition(live[from], alphabet[a], live[to]);
+        } else if (kind < 8) {
+            table[from * k + a] = -1;
+            dfa.removeTransition(live[from], alphabet[a]);
+        } else {
+            finals[from] = !finals[from];
+            dfa.setFinal(live[from], finals[from]);
+        }
+        Dfa edited = new Dfa(k, table, finals, before.initState, null);
+        check(dfa, alphabet, reachable(edited), seed, e);
+    }
+
+    private static void check(IncrementalDfa dfa, String[] alphabet, Dfa expected, int seed, int e) {
+        StateMachine.Graph scratch = StateMachine.Graph.minimize(
+                StateMachine.Graph.fromDfa(alphabet, expected, "E", RandomAutomata.LAMBDA),
+                OutputStream.nullOutputStream(), StateMachine.Graph.MinimizeEngine.HOPCROFT);
+        StateMachine.Graph incremental = dfa.toGraph();
+        if (scratch.nodeCount() != dfa.stateCount() ||
+                !Equivalence.equivalent(scratch, incremental)) {
+            throw new IllegalStateException("seed " + seed + ", edit " + e + ": " +
+                    dfa.stateCount() + " states, minimize from scratch gives " +
+                    scratch.nodeCount());
+        }
+    }
+
+    /** {@code dfa} cut to the states its initial state reaches, in their old order. */
+    private static Dfa reachable(Dfa dfa) {
+        int n = dfa.stateCount, k = dfa.symbolCount;
+        boolean[] seen = new boolean[n];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        seen[dfa.initState] = true;
+        queue.add(dfa.initState);
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            for (int a = 0; a < k; a++) {
+                int target = dfa.next(s, a);
+                if (target >= 0 && !seen[target]) {
+                    seen[target] = true;
+                    queue.add(target);
+                }
+            }
+        }
+        int[] index = new int[n];
+        int count = 0;
+        for (int s = 0; s < n; s++) {
+            index[s] = seen[s] ? count++ : -1;
+        }
+        int[] table = new int[count * k];
+        boolean[] finals = new boolean[count];
+        for (int s = 0; s < n; s++) {
+            if (!seen[s]) {
+                continue;
+            }
+            finals[index[s]] = dfa.finals[s];
+            for (int a = 0; a < k; a++) {
+                int target = dfa.next(s, a);
+                table[index[s] * k + a] = target >= 0 ? index[target] : -1;
+            }
+        }
+        return new Dfa(k, table, finals, index[dfa.initState], null);
+    }
+}
@@ -0,0 +1,135 @@
+package stateMachine;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OperationsPerInvocation(MatchBenchmark.WORDS)
+public class MatchBenchmark {
+    static final int WORDS = 1024;
+
+    @Param({"100", "1000", "10000"})
+    public int states;
+    @Param({"4"})
+    public int alphabetSize;
+    @Param({"0.2"})
+    public double finalRatio;
+    @Param({"32"})
+    public int maxLength;
+
+    private CompiledDfa compiled;
+    private MappedDfa mapped;
+    private LazyDfa lazy;
+    private BitNfa bitNfa;
+    private Path file;
+    private String[] words;
+    private byte[][] bytes;
+    private ByteBuffer records;
+    private StreamMatcher stream;
+    private int streamMatched;
+
+    @Setup
+    public void setup() throws IOException {
+        StateMachine.Graph graph = RandomAutomata.parse(RandomAutomata.generate(states,
+                alphabetSize, 0, finalRatio, 42));
+        lazy = graph.lazy(1 << 24);
+        bitNfa = graph.bitNfa();
+        graph.determinize(true);
+        compiled = graph.compile();
+        file = Files.createTempFile("match-benchmark", ".smdf");
+        AutomatonFile.write(compiled, file);
+        mapped = AutomatonFile.map(file);
+        words = RandomAutomata.words(compiled, WORDS, maxLength, 7);
+        bytes = new byte[WORDS][];
+        for (int i = 0; i < WORDS; i++) {
+            bytes[i] = words[i].getBytes(StandardCharsets.ISO_8859_1);
+        }
+        records = ByteBuffer.allocateDirect(WORDS * (maxLength + 1));
+        for (byte[] word : bytes) {
+            records.put(word).put((byte)'\n');
+        }
+        records.flip();
+        stream = new StreamMatcher(compiled, '\n', (start, end) -> streamMatched++);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public int compiledChars() {
+        int matched = 0;
+        for (String word : words) {
+            if (compiled.matches(word)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int compiledBytes() {
+        int matched = 0;
+        for (byte[] word : bytes) {
+            if (compiled.matches(word)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int mappedBytes() {
+        int matched = 0;
+        for (byte[] word : bytes) {
+            if (mapped.matches(word)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int lazyChars() {
+        int matched = 0;
+        for (String word : words) {
+            if (lazy.matches(word)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int bitNfaChars() {
+        int matched = 0;
+        for (String word : words) {
+            if (bitNfa.matches(word)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int streamRecords() {
+        streamMatched = 0;
+        stream.reset();
+        records.rewind();
+        stream.feed(records);
+        stream.finish();
+        return streamMatched;
+    }
+}
@@ -0,0 +1,70 @@
+package stateMachine;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MinimizeBenchmark {
+    @State(Scope.Benchmark)
+    public static class Input {
+        @Param({"100", "1000", "10000"})
+        public int states;
+        @Param({"4"})
+        public int alphabetSize;
+        @Param({"0.2"})
+        public double finalRatio;
+
+        StateMachine.Graph dfa;
+
+        @Setup
+        public void setup() {
+            dfa = RandomAutomata.parse(RandomAutomata.generate(states, alphabetSize, 0,
+                    finalRatio, 42));
+            dfa.determinize(true);
+        }
+    }
+
+    /** Moore refinement is roughly cubic, so it stops at 1000 states. */
+    @State(Scope.Benchmark)
+    public static class MooreInput {
+        @Param({"100", "1000"})
+        public int states;
+        @Param({"4"})
+        public int alphabetSize;
+        @Param({"0.2"})
+        public double finalRatio;
+
+        StateMachine.Graph dfa;
+
+        @Setup
+        public void setup() {
+            dfa = RandomAutomata.parse(RandomAutomata.generate(states, alphabetSize, 0,
+                    finalRatio, 42));
+            dfa.determinize(true);
+        }
+    }
+
+    @Benchmark
+    public Object moore(MooreInput input) {
+        return StateMachine.Graph.minimize(input.dfa, OutputStream.nullOutputStream(),
+                StateMachine.Graph.MinimizeEngine.MOORE);
+    }
+
+    @Benchmark
+    public Object hopcroft(Input input) {
+        return StateMachine.Graph.minimize(input.dfa, OutputStream.nullOutputStream(),
+                StateMachine.Graph.MinimizeEngine.HOPCROFT);
+    }
+
+    @Benchmark
+    public Object parallel(Input input) {
+        return StateMachine.Graph.minimize(input.dfa, OutputStream.nullOutputStream(),
+                StateMachine.Graph.MinimizeEngine.PARALLEL);
+    }
+}
@@ -0,0 +1,43 @@
+package stateMachine;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int states;
+    @Param({"4"})
+    public int alphabetSize;
+    @Param({"0.05"})
+    public double lambdaDensity;
+    @Param({"0.2"})
+    public double finalRatio;
+
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        bytes = RandomAutomata.generate(states, alphabetSize, lambdaDensity, finalRatio, 42)
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Object baseline() {
+        return BaselineReader.read(new ByteArrayInputStream(bytes));
+    }
+
+    @Benchmark
+    public Object graphReader() throws IOException {
+        return StateMachine.Graph.buildGraph(new ByteArrayInputStream(bytes));
+    }
+}
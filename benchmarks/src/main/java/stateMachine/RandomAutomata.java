@@ -0,0 +1,153 @@
+package stateMachine;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.Random;
+
+/**
+ * Seeded generators of random automata in the graph text format.
+ * <p>
+ * {@link #generate} gives automata whose closures stay deterministic: a
+ * state with a lambda edge (one in {@code lambdaDensity}) points to a state
+ * without one whose symbols are disjoint from its own, so subset construction
+ * yields at most one state per input state and only copies. A density of 0
+ * gives a complete DFA.
+ * <p>
+ * {@link #nondeterministic} gives real nondeterminism with a capped blow-up:
+ * states come in blocks, and every state has up to {@code branching} targets
+ * per symbol and possibly a lambda edge, all inside its block. The first two
+ * symbols only lead from the first state of a block to the first states of
+ * two child blocks, so every subset lies in one block and the DFA has at most
+ * {@code 2^blockSize} states per block.
+ */
+final class RandomAutomata {
+    static final String LAMBDA = "~";
+    private static final String SYMBOLS =
+            "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    private RandomAutomata() {}
+
+    static String generate(int states, int alphabetSize, double lambdaDensity,
+                           double finalRatio, long seed) {
+        if (alphabetSize > SYMBOLS.length()) {
+            throw new IllegalArgumentException("at most " + SYMBOLS.length() + " symbols");
+        }
+        Random random = new Random(seed);
+        int[] lambdaTargets = new int[states];
+        boolean[] plain = new boolean[states];
+        int plainCount = 0;
+        for (int s = 0; s < states; s++) {
+            plain[s] = random.nextDouble() >= lambdaDensity;
+            if (plain[s]) {
+                lambdaTargets[plainCount++] = s;
+            }
+        }
+        if (plainCount == 0) {
+            throw new IllegalArgumentException("lambda density leaves no plain states");
+        }
+        for (int s = 0; s < states; s++) {
+            lambdaTargets[s] = plain[s] ? -1 : lambdaTargets[random.nextInt(plainCount)];
+        }
+
+        boolean[][] owns = new boolean[states][alphabetSize];
+        for (int s = 0; s < states; s++) {
+            for (int a = 0; a < alphabetSize; a++) {
+                owns[s][a] = lambdaDensity == 0 || random.nextBoolean();
+            }
+        }
+        for (int s = 0; s < states; s++) {
+            if (lambdaTargets[s] >= 0) {
+                for (int a = 0; a < alphabetSize; a++) {
+                    owns[s][a] &= !owns[lambdaTargets[s]][a];
+                }
+            }
+        }
+
+        StringBuilder text = new StringBuilder(states * alphabetSize * 16);
+        text.append("lambda = ").append(LAMBDA).append('\n');
+        text.append("initnode = q0\n");
+        for (int s = 0; s < states; s++) {
+            for (int a = 0; a < alphabetSize; a++) {
+                if (owns[s][a]) {
+                    edge(text, s, random.nextInt(states), SYMBOLS.substring(a, a + 1));
+                }
+            }
+            if (lambdaTargets[s] >= 0) {
+                edge(text, s, lambdaTargets[s], LAMBDA);
+            }
+            if (random.nextDouble() < finalRatio) {
+                text.append('q').append(s).append(" #\n");
+            }
+        }
+        return text.toString();
+    }
+
+    static String nondeterministic(int states, int alphabetSize, int blockSize, int branching,
+                                   double lambdaDensity, double finalRatio, long seed) {
+        if (alphabetSize > SYMBOLS.length() || alphabetSize < 3) {
+            throw new IllegalArgumentException("between 3 and " + SYMBOLS.length() + " symbols");
+        }
+        Random random = new Random(seed);
+        int blocks = (states + blockSize - 1) / blockSize;
+        StringBuilder text = new StringBuilder(states * alphabetSize * branching * 12);
+        text.append("lambda = ").append(LAMBDA).append('\n');
+        text.append("initnode = q0\n");
+        for (int s = 0; s < states; s++) {
+            int block = s / blockSize, first = block * blockSize;
+            int size = Math.min(states, first + blockSize) - first;
+            if (s == first) {
+                for (int c = 0; c < 2; c++) {
+                    int child = 2 * block + 1 + c;
+                    if (child < blocks) {
+                        edge(text, s, child * blockSize, SYMBOLS.substring(c, c + 1));
+                    }
+                }
+            }
+            for (int a = 2; a < alphabetSize; a++) {
+                for (int i = 1 + random.nextInt(branching); i > 0; i--) {
+                    edge(text, s, first + random.nextInt(size), SYMBOLS.substring(a, a + 1));
+                }
+            }
+            if (random.nextDouble() < lambdaDensity) {
+                edge(text, s, first + random.nextInt(size), LAMBDA);
+            }
+            if (random.nextDouble() < finalRatio) {
+                text.append('q').append(s).append(" #\n");
+            }
+        }
+        return text.toString();
+    }
+
+    private static void edge(StringBuilder text, int from, int to, String symbol) {
+        text.append('q').append(from).append(" q").append(to).append(' ').append(symbol)
+                .append('\n');
+    }
+
+    static StateMachine.Graph parse(String text) {
+        try {
+            return GraphReader.read(new StringReader(text));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Random walks from the initial state, cut at a random length or a missing edge. */
+    static String[] words(CompiledDfa dfa, int count, int maxLength, long seed) {
+        Random random = new Random(seed);
+        String[] words = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder word = new StringBuilder();
+            int state = dfa.initState(), length = 1 + random.nextInt(maxLength);
+            while (state >= 0 && word.length() < length && dfa.symbolCount() > 0) {
+                int symbol = random.nextInt(dfa.symbolCount());
+                state = dfa.step(state, symbol);
+                if (state >= 0) {
+                    word.append(dfa.symbol(symbol));
+                }
+            }
+            words[i] = word.toString();
+        }
+        return words;
+    }
+}
@@ -0,0 +1,171 @@
+package stateMachine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary format of compiled automata, all numbers little-endian:
+ * <pre>
+ * header   magic "SMDF", version, stateCount, symbolCount, initState,
+ *          tableOffset, finalsOffset                          (7 ints)
+ * alphabet per symbol: UTF-8 length (int) and bytes, padded to 4 bytes
+ * table    stateCount * symbolCount ints, -1 for a missing edge
+ * finals   (stateCount + 63) / 64 longs, 8-byte aligned
+ * </pre>
+ * {@link #map} checks the header, the section bounds and, in one pass, that
+ * every transition target is a state or -1; the table is then read in place
+ * through the mapping with no further checks.
+ */
+final class AutomatonFile {
+    static final int MAGIC = 0x46444D53;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 7 * Integer.BYTES;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] PADDING = new byte[Long.BYTES];
+
+    private AutomatonFile() {}
+
+    static void write(CompiledDfa dfa, Path path) throws IOException {
+        int stateCount = dfa.stateCount(), symbolCount = dfa.symbolCount();
+        byte[][] symbols = new byte[symbolCount][];
+        long offset = HEADER_SIZE;
+        for (int a = 0; a < symbolCount; a++) {
+            symbols[a] = dfa.symbol(a).getBytes(StandardCharsets.UTF_8);
+            offset += Integer.BYTES + align(symbols[a].length, Integer.BYTES);
+        }
+        long tableOffset = offset;
+        long finalsOffset = align(tableOffset + (long)stateCount * symbolCount * Integer.BYTES,
+                Long.BYTES);
+        if (finalsOffset > Integer.MAX_VALUE) {
+            throw new IOException("Automaton too large for format version " + VERSION);
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(stateCount).putInt(symbolCount)
+                    .putInt(dfa.initState()).putInt((int)tableOffset).putInt((int)finalsOffset);
+            for (byte[] symbol : symbols) {
+                ensure(channel, buffer, Integer.BYTES);
+                buffer.putInt(symbol.length);
+                for (int i = 0; i < symbol.length; ) {
+                    int n = Math.min(symbol.length - i, room(channel, buffer, 1));
+                    buffer.put(symbol, i, n);
+                    i += n;
+                }
+                int padding = (int)align(symbol.length, Integer.BYTES) - symbol.length;
+                ensure(channel, buffer, padding);
+                buffer.put(PADDING, 0, padding);
+            }
+            long cells = (long)stateCount * symbolCount;
+            int s = 0, a = 0;
+            for (long c = 0; c < cells; ) {
+                int n = (int)Math.min(cells - c, room(channel, buffer, Integer.BYTES));
+                for (int i = 0; i < n; i++) {
+                    buffer.putInt(dfa.step(s, a));
+                    if (++a == symbolCount) {
+                        a = 0;
+                        s++;
+                    }
+                }
+                c += n;
+            }
+            int padding = (int)(finalsOffset - tableOffset - cells * Integer.BYTES);
+            ensure(channel, buffer, padding);
+            buffer.put(PADDING, 0, padding);
+            int words = (stateCount + 63) >>> 6;
+            for (int word = 0; word < words; ) {
+                int end = Math.min(words, word + room(channel, buffer, Long.BYTES));
+                for (; word < end; word++) {
+                    long bits = 0;
+                    for (int state = word << 6; state < Math.min(stateCount, (word + 1) << 6); state++) {
+                        if (dfa.isFinal(state)) {
+                            bits |= 1L << state;
+                        }
+                    }
+                    buffer.putLong(bits);
+                }
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    static MappedDfa map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + ": not an automaton file");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException(path + ": not an automaton file");
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException(path + ": unsupported version " + buffer.getInt(4));
+            }
+            int stateCount = buffer.getInt(8), symbolCount = buffer.getInt(12),
+                    initState = buffer.getInt(16), tableOffset = buffer.getInt(20),
+                    finalsOffset = buffer.getInt(24);
+            long tableEnd = tableOffset + (long)stateCount * symbolCount * Integer.BYTES;
+            long finalsEnd = finalsOffset + (long)((stateCount + 63) >>> 6) * Long.BYTES;
+            if (stateCount < 0 || symbolCount < 0 || initState < -1 || initState >= stateCount ||
+                    tableOffset < HEADER_SIZE || tableEnd > finalsOffset ||
+                    finalsEnd > buffer.capacity() || finalsOffset % Long.BYTES != 0) {
+                throw new IOException(path + ": corrupt automaton header");
+            }
+
+            String[] alphabet = new String[symbolCount];
+            long offset = HEADER_SIZE;
+            for (int a = 0; a < symbolCount; a++) {
+                int length = offset + Integer.BYTES <= tableOffset ? buffer.getInt((int)offset) : -1;
+                if (length < 0 || offset + Integer.BYTES + length > tableOffset) {
+                    throw new IOException(path + ": corrupt alphabet");
+                }
+                byte[] symbol = new byte[length];
+                buffer.get((int)offset + Integer.BYTES, symbol);
+                alphabet[a] = new String(symbol, StandardCharsets.UTF_8);
+                offset += Integer.BYTES + align(length, Integer.BYTES);
+            }
+            IntBuffer table = buffer.slice(tableOffset, (int)(tableEnd - tableOffset))
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            for (int i = 0, cells = table.limit(); i < cells; i++) {
+                int target = table.get(i);
+                if (target < -1 || target >= stateCount) {
+                    throw new IOException(path + ": corrupt transition table");
+                }
+            }
+            return new MappedDfa(buffer, alphabet, stateCount, initState, tableOffset, finalsOffset);
+        }
+    }
+
+    private static long align(long value, int alignment) {
+        return (value + alignment - 1) / alignment * alignment;
+    }
+
+    private static void ensure(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush(channel, buffer);
+        }
+    }
+
+    /** Flushes {@code buffer} if it has no room for one {@code unit}; returns the units it has room for. */
+    private static int room(FileChannel channel, ByteBuffer buffer, int unit) throws IOException {
+        ensure(channel, buffer, unit);
+        return buffer.remaining() / unit;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,225 @@
+package stateMachine;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Runs one automaton over many independent inputs on a {@link ForkJoinPool}.
+ * Inputs are split into ranges of whole 64-bit words of the result, so each
+ * task fills its own words and nothing is shared while matching. Matchers
+ * with per-call state, like {@link LazyDfa}, are borrowed by each task from
+ * a queue of spares and created through the supplier when none is free, so
+ * there are never more than tasks ran at once and none stay on the pool's
+ * threads.
+ */
+final class BatchMatcher {
+    private static final int THRESHOLD = 1024;
+    /** Stream elements held and matched at a time, a multiple of 64. */
+    private static final int STREAM_CHUNK = 1 << 16;
+
+    private final Supplier<? extends Matcher> matchers;
+    private final ConcurrentLinkedQueue<Matcher> spare = new ConcurrentLinkedQueue<>();
+    private final ForkJoinPool pool;
+    private volatile Stats lastStats;
+
+    /** Shares {@code matcher}, which must be thread-safe, like {@link CompiledDfa}. */
+    BatchMatcher(Matcher matcher) {
+        this(() -> matcher, ForkJoinPool.commonPool());
+    }
+
+    BatchMatcher(Supplier<? extends Matcher> matchers, ForkJoinPool pool) {
+        this.matchers = matchers;
+        this.pool = pool;
+    }
+
+    /** Bit {@code i} of the result is set if {@code inputs[i]} matches. */
+    BitSet matchAll(CharSequence[] inputs) {
+        return run(inputs.length, chars(inputs));
+    }
+
+    BitSet matchAll(List<? extends CharSequence> inputs) {
+        return run(inputs.size(), new Inputs() {
+            @Override
+            public boolean matches(Matcher matcher, int i) {
+                return matcher.matches(inputs.get(i));
+            }
+
+            @Override
+            public int length(int i) {
+                return inputs.get(i).length();
+            }
+        });
+    }
+
+    BitSet matchAll(byte[][] inputs) {
+        return run(inputs.length, new Inputs() {
+            @Override
+            public boolean matches(Matcher matcher, int i) {
+                return matcher.matches(inputs[i]);
+            }
+
+            @Override
+            public int length(int i) {
+                return inputs[i].length;
+            }
+        });
+    }
+
+    /**
+     * Bit {@code i} stands for the {@code i}-th element of the stream, which
+     * is consumed in chunks of {@value #STREAM_CHUNK} elements, each matched
+     * in parallel before the next is read; only one chunk is held at a time.
+     */
+    BitSet matchAll(Stream<? extends CharSequence> inputs) {
+        long start = System.nanoTime();
+        LongAdder symbols = new LongAdder();
+        CharSequence[] chunk = new CharSequence[STREAM_CHUNK];
+        long[] words = new long[STREAM_CHUNK >>> 6];
+        int count = 0, filled = 0;
+        Iterator<? extends CharSequence> iterator = inputs.iterator();
+        while (true) {
+            boolean more = iterator.hasNext();
+            if (more) {
+                chunk[filled++] = iterator.next();
+            }
+            if (filled == STREAM_CHUNK || !more && filled > 0) {
+                if (words.length < (count + STREAM_CHUNK) >>> 6) {
+                    words = Arrays.copyOf(words, words.length * 2);
+                }
+                int base = count >>> 6;
+                pool.invoke(new Task(chars(chunk), 0, (filled + 63) >>> 6, filled, words, base,
+                        symbols));
+                count += filled;
+                filled = 0;
+            }
+            if (!more) {
+                return finish(count, words, symbols, start);
+            }
+        }
+    }
+
+    /** Figures of the last finished batch, or {@code null} before the first. */
+    Stats lastStats() {
+        return lastStats;
+    }
+
+    private BitSet run(int count, Inputs inputs) {
+        long start = System.nanoTime();
+        long[] words = new long[(count + 63) >>> 6];
+        LongAdder symbols = new LongAdder();
+        pool.invoke(new Task(inputs, 0, words.length, count, words, 0, symbols));
+        return finish(count, words, symbols, start);
+    }
+
+    private BitSet finish(int count, long[] words, LongAdder symbols, long start) {
+        BitSet result = BitSet.valueOf(words);
+        lastStats = new Stats(count, result.cardinality(), symbols.sum(), System.nanoTime() - start);
+        Instrumentation.listener().batchMatched(lastStats);
+        return result;
+    }
+
+    private static Inputs chars(CharSequence[] inputs) {
+        return new Inputs() {
+            @Override
+            public boolean matches(Matcher matcher, int i) {
+                return matcher.matches(inputs[i]);
+            }
+
+            @Override
+            public int length(int i) {
+                return inputs[i].length();
+            }
+        };
+    }
+
+    private interface Inputs {
+        boolean matches(Matcher matcher, int i);
+
+        int length(int i);
+    }
+
+    private final class Task extends RecursiveAction {
+        private final Inputs inputs;
+        private final int fromWord;
+        private final int toWord;
+        private final int count;
+        private final long[] words;
+        /** Word of {@code words} that input 0 is written to. */
+        private final int base;
+        private final LongAdder symbols;
+
+        Task(Inputs inputs, int fromWord, int toWord, int count, long[] words, int base,
+             LongAdder symbols) {
+            this.inputs = inputs;
+            this.fromWord = fromWord;
+            this.toWord = toWord;
+            this.count = count;
+            this.words = words;
+            this.base = base;
+            this.symbols = symbols;
+        }
+
+        @Override
+        protected void compute() {
+            if ((toWord - fromWord) << 6 <= THRESHOLD || toWord - fromWord == 1) {
+                Matcher matcher = spare.poll();
+                if (matcher == null) {
+                    matcher = matchers.get();
+                }
+                long length = 0;
+                try {
+                    for (int i = fromWord << 6, end = Math.min(toWord << 6, count); i < end; i++) {
+                        if (inputs.matches(matcher, i)) {
+                            words[base + (i >>> 6)] |= 1L << i;
+                        }
+                        length += inputs.length(i);
+                    }
+                } finally {
+                    spare.add(matcher);
+                }
+                symbols.add(length);
+                return;
+            }
+            int mid = (fromWord + toWord) >>> 1;
+            invokeAll(new Task(inputs, fromWord, mid, count, words, base, symbols),
+                    new Task(inputs, mid, toWord, count, words, base, symbols));
+        }
+    }
+
+    /** Size and timing of one batch. */
+    static final class Stats {
+        final int inputs;
+        final int matched;
+        final long symbols;
+        final long nanos;
+
+        Stats(int inputs, int matched, long symbols, long nanos) {
+            this.inputs = inputs;
+            this.matched = matched;
+            this.symbols = symbols;
+            this.nanos = nanos;
+        }
+
+        double inputsPerSecond() {
+            return nanos > 0 ? inputs * 1e9 / nanos : 0;
+        }
+
+        double symbolsPerSecond() {
+            return nanos > 0 ? symbols * 1e9 / nanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d inputs, %d matched, %d symbols in %.3f ms (%.0f inputs/s, %.0f symbols/s)",
+                    inputs, matched, symbols, nanos / 1e6, inputsPerSecond(), symbolsPerSecond());
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package stateMachine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * NFA simulation over bitsets of states, with no determinization. Lambda
+ * closures are folded into the transitions, so the active set stays closed.
+ * For every symbol, edges that move the same distance through the state
+ * numbering ({@code s -> s + d}) are merged into one mask, applied Shift-And
+ * style as {@code (active & mask) << d}; chains of nodes numbered in order,
+ * as most parsed graphs are, cost one shift per symbol. Remaining edges are
+ * followed from each active source. Automata of up to 64 states run on a
+ * single {@code long}; larger ones on two bitsets borrowed per call from a
+ * queue of spares, which holds no more pairs than calls ever ran at once and
+ * goes away with the automaton. Thread-safe.
+ */
+final class BitNfa implements Matcher {
+    /** Edges a distance needs on one symbol to get its own shift mask. */
+    private static final int MIN_GROUP = 4;
+    private static final int MAX_GROUPS = 8;
+
+    private final String[] alphabet;
+    private final int stateCount;
+    private final int words;
+    private final long[] init;
+    private final long[] finals;
+    /** Shift distances of every symbol, and their source masks of {@code words} longs each. */
+    private final int[][] distances;
+    private final long[][] groupMasks;
+    /** Sources of the edges outside the shift masks, and their targets by source. */
+    private final long[][] sources;
+    private final int[][][] targets;
+    /** The same for a single word: targets as masks. */
+    private final long[][] singleTargets;
+    private final int[] charColumns;
+    private final int[] byteColumns;
+    /** Pairs of current and next active sets free for a call, unused on a single word. */
+    private final ConcurrentLinkedQueue<long[][]> spare = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param initState NFA state matching starts from, or -1 if the graph has no
+     *                  node with the initial name; nothing is accepted then
+     */
+    BitNfa(String[] alphabet, Nfa nfa, int initState) {
+        this.alphabet = alphabet;
+        this.stateCount = nfa.stateCount;
+        this.words = Math.max(1, (stateCount + 63) >>> 6);
+        this.init = new long[words];
+        if (initState >= 0) {
+            for (int s : nfa.closure(initState)) {
+                init[s >>> 6] |= 1L << s;
+            }
+        }
+        this.finals = new long[words];
+        for (int s = 0; s < stateCount; s++) {
+            if (nfa.finals[s]) {
+                finals[s >>> 6] |= 1L << s;
+            }
+        }
+
+        int symbolCount = nfa.symbolCount;
+        this.distances = new int[symbolCount][];
+        this.groupMasks = new long[symbolCount][];
+        this.sources = new long[symbolCount][];
+        this.targets = new int[symbolCount][][];
+        this.singleTargets = words == 1 ? new long[symbolCount][] : null;
+        long[][] pairs = pairs(nfa);
+        for (int a = 0; a < symbolCount; a++) {
+            buildSymbol(a, pairs[a]);
+        }
+        this.charColumns = CompiledDfa.charColumns(alphabet);
+        this.byteColumns = CompiledDfa.byteColumns(alphabet);
+    }
+
+    /** Sorted, distinct {@code source << 32 | target} edges of every symbol, closures folded in. */
+    private static long[][] pairs(Nfa nfa) {
+        int[] counts = new int[nfa.symbolCount];
+        long[][] pairs = new long[nfa.symbolCount][];
+        for (int a = 0; a < nfa.symbolCount; a++) {
+            pairs[a] = new long[16];
+        }
+        for (int s = 0; s < nfa.stateCount; s++) {
+            for (int e = nfa.edgeStart[s]; e < nfa.edgeStart[s + 1]; e++) {
+                int a = nfa.edgeSymbol[e];
+                for (int t : nfa.closure(nfa.edgeTarget[e])) {
+                    if (counts[a] == pairs[a].length) {
+                        pairs[a] = Arrays.copyOf(pairs[a], counts[a] * 2);
+                    }
+                    pairs[a][counts[a]++] = (long)s << 32 | t;
+                }
+            }
+        }
+        for (int a = 0; a < nfa.symbolCount; a++) {
+            long[] sorted = Arrays.copyOf(pairs[a], counts[a]);
+            Arrays.sort(sorted);
+            int distinct = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[distinct++] = sorted[i];
+                }
+            }
+            pairs[a] = Arrays.copyOf(sorted, distinct);
+        }
+        return pairs;
+    }
+
+    private void buildSymbol(int a, long[] pairs) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (long pair : pairs) {
+            counts.merge(target(pair) - source(pair), 1, Integer::sum);
+        }
+        List<Map.Entry<Integer, Integer>> frequent = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+            if (entry.getValue() >= MIN_GROUP) {
+                frequent.add(entry);
+            }
+        }
+        frequent.sort((x, y) -> x.getValue().equals(y.getValue()) ?
+                Integer.compare(x.getKey(), y.getKey()) : Integer.compare(y.getValue(), x.getValue()));
+        int[] chosen = new int[Math.min(frequent.size(), MAX_GROUPS)];
+        for (int g = 0; g < chosen.length; g++) {
+            chosen[g] = frequent.get(g).getKey();
+        }
+        distances[a] = chosen;
+        groupMasks[a] = new long[chosen.length * words];
+        sources[a] = new long[words];
+
+        int[] targetCounts = new int[stateCount];
+        boolean[] grouped = new boolean[pairs.length];
+        for (int i = 0; i < pairs.length; i++) {
+            int s = source(pairs[i]), d = target(pairs[i]) - s;
+            for (int g = 0; g < chosen.length && !grouped[i]; g++) {
+                if (chosen[g] == d) {
+                    groupMasks[a][g * words + (s >>> 6)] |= 1L << s;
+                    grouped[i] = true;
+                }
+            }
+            if (!grouped[i]) {
+                sources[a][s >>> 6] |= 1L << s;
+                targetCounts[s]++;
+            }
+        }
+
+        if (words == 1) {
+            singleTargets[a] = new long[stateCount];
+            for (int i = 0; i < pairs.length; i++) {
+                if (!grouped[i]) {
+                    singleTargets[a][source(pairs[i])] |= 1L << target(pairs[i]);
+                }
+            }
+            return;
+        }
+        targets[a] = new int[stateCount][];
+        for (int i = 0; i < pairs.length; i++) {
+            if (grouped[i]) {
+                continue;
+            }
+            int s = source(pairs[i]);
+            if (targets[a][s] == null) {
+                targets[a][s] = new int[targetCounts[s]];
+                targetCounts[s] = 0;
+            }
+            targets[a][s][targetCounts[s]++] = target(pairs[i]);
+        }
+    }
+
+    private static int source(long pair) {
+        return (int)(pair >>> 32);
+    }
+
+    private static int target(long pair) {
+        return (int)pair;
+    }
+
+    int stateCount() {
+        return stateCount;
+    }
+
+    /** Column of {@code symbol}, or -1 if it is not in the alphabet. */
+    int symbolIndex(String symbol) {
+        int index = Arrays.binarySearch(alphabet, symbol);
+        return index >= 0 ? index : -1;
+    }
+
+    @Override
+    public boolean matches(CharSequence input) {
+        int[] columns = charColumns;
+        int length = input.length();
+        if (words == 1) {
+            long active = init[0];
+            for (int i = 0; i < length && active != 0; i++) {
+                char c = input.charAt(i);
+                if (c >= columns.length || columns[c] < 0) {
+                    return false;
+                }
+                active = step(active, columns[c]);
+            }
+            return (active & finals[0]) != 0;
+        }
+        long[][] sets = borrow();
+        try {
+            return matchesWords(input, sets);
+        } finally {
+            spare.add(sets);
+        }
+    }
+
+    private boolean matchesWords(CharSequence input, long[][] sets) {
+        int[] columns = charColumns;
+        long[] active = sets[0], next = sets[1];
+        System.arraycopy(init, 0, active, 0, words);
+        for (int i = 0, length = input.length(); i < length; i++) {
+            char c = input.charAt(i);
+            if (c >= columns.length || columns[c] < 0 || !step(active, next, columns[c])) {
+                return false;
+            }
+            long[] swap = active;
+            active = next;
+            next = swap;
+        }
+        return intersects(active, finals);
+    }
+
+    @Override
+    public boolean matches(byte[] input, int offset, int length) {
+        int[] columns = byteColumns;
+        if (words == 1) {
+            long active = init[0];
+            for (int i = offset, end = offset + length; i < end && active != 0; i++) {
+                int column = columns[input[i] & 0xFF];
+                if (column < 0) {
+                    return false;
+                }
+                active = step(active, column);
+            }
+            return (active & finals[0]) != 0;
+        }
+        long[][] sets = borrow();
+        try {
+            return matchesWords(input, offset, length, sets);
+        } finally {
+            spare.add(sets);
+        }
+    }
+
+    private boolean matchesWords(byte[] input, int offset, int length, long[][] sets) {
+        int[] columns = byteColumns;
+        long[] active = sets[0], next = sets[1];
+        System.arraycopy(init, 0, active, 0, words);
+        for (int i = offset, end = offset + length; i < end; i++) {
+            int column = columns[input[i] & 0xFF];
+            if (column < 0 || !step(active, next, column)) {
+                return false;
+            }
+            long[] swap = active;
+            active = next;
+            next = swap;
+        }
+        return intersects(active, finals);
+    }
+
+    /** Runs a sequence of column indexes, as returned by {@link #symbolIndex}. */
+    boolean matches(int[] symbols) {
+        if (words == 1) {
+            long active = init[0];
+            for (int i = 0; i < symbols.length && active != 0; i++) {
+                active = step(active, symbols[i]);
+            }
+            return (active & finals[0]) != 0;
+        }
+        long[][] sets = borrow();
+        try {
+            return matchesWords(symbols, sets);
+        } finally {
+            spare.add(sets);
+        }
+    }
+
+    private boolean matchesWords(int[] symbols, long[][] sets) {
+        long[] active = sets[0], next = sets[1];
+        System.arraycopy(init, 0, active, 0, words);
+        for (int symbol : symbols) {
+            if (!step(active, next, symbol)) {
+                return false;
+            }
+            long[] swap = active;
+            active = next;
+            next = swap;
+        }
+        return intersects(active, finals);
+    }
+
+    /** A spare pair of bitsets, or a new one if every pair is in use. */
+    private long[][] borrow() {
+        long[][] sets = spare.poll();
+        return sets != null ? sets : new long[][] {new long[words], new long[words]};
+    }
+
+    private long step(long active, int a) {
+        long next = 0;
+        int[] d = distances[a];
+        long[] masks = groupMasks[a];
+        for (int g = 0; g < d.length; g++) {
+            long moved = active & masks[g];
+            next |= d[g] >= 0 ? moved << d[g] : moved >>> -d[g];
+        }
+        long rest = active & sources[a][0];
+        long[] single = singleTargets[a];
+        while (rest != 0) {
+            next |= single[Long.numberOfTrailingZeros(rest)];
+            rest &= rest - 1;
+        }
+        return next;
+    }
+
+    /** Writes the successors of {@code active} on {@code a} to {@code next}; false if there are none. */
+    private boolean step(long[] active, long[] next, int a) {
+        Arrays.fill(next, 0);
+        int[] d = distances[a];
+        long[] masks = groupMasks[a];
+        for (int g = 0; g < d.length; g++) {
+            shiftOr(active, masks, g * words, d[g], next);
+        }
+        long[] rest = sources[a];
+        int[][] bySource = targets[a];
+        for (int w = 0; w < words; w++) {
+            long bits = active[w] & rest[w];
+            while (bits != 0) {
+                for (int t : bySource[(w << 6) + Long.numberOfTrailingZeros(bits)]) {
+                    next[t >>> 6] |= 1L << t;
+                }
+                bits &= bits - 1;
+            }
+        }
+        for (long word : next) {
+            if (word != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** ORs {@code (active & mask) << distance} into {@code next}, a negative distance shifting down. */
+    private void shiftOr(long[] active, long[] masks, int maskOffset, int distance, long[] next) {
+        int wordShift = Math.abs(distance) >>> 6, bitShift = Math.abs(distance) & 63;
+        for (int w = 0; w < words; w++) {
+            long moved = active[w] & masks[maskOffset + w];
+            if (moved == 0) {
+                continue;
+            }
+            if (distance >= 0) {
+                int to = w + wordShift;
+                if (to < words) {
+                    next[to] |= moved << bitShift;
+                }
+                if (bitShift != 0 && to + 1 < words) {
+                    next[to + 1] |= moved >>> (64 - bitShift);
+                }
+            } else {
+                int to = w - wordShift;
+                if (to >= 0) {
+                    next[to] |= moved >>> bitShift;
+                }
+                if (bitShift != 0 && to - 1 >= 0) {
+                    next[to - 1] |= moved << (64 - bitShift);
+                }
+            }
+        }
+    }
+
+    private static boolean intersects(long[] x, long[] y) {
+        for (int w = 0; w < x.length; w++) {
+            if ((x[w] & y[w]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,55 @@
+package stateMachine;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Limits on one determinization or minimization: states built, an estimate
+ * of the bytes they take, a deadline and a cancellation flag. The builders
+ * check sizes on every new state and time every few hundred steps, and
+ * throw {@link BudgetExceededException} once a limit is passed; sizes are
+ * checked again before the resulting graph is built, with its nodes, names
+ * and edges counted. Immutable; the flag is the caller's to set.
+ */
+final class Budget {
+    static final Budget UNLIMITED = new Budget(Integer.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, null);
+    /** Steps between two reads of the clock and the cancellation flag. */
+    static final int TIME_CHECK_INTERVAL = 256;
+
+    final int maxStates;
+    final long maxBytes;
+    private final long deadline;
+    private final boolean hasDeadline;
+    private final AtomicBoolean cancelled;
+
+    /**
+     * @param timeoutNanos time from now to the deadline, or {@link Long#MAX_VALUE} for none
+     * @param cancelled    set to {@code true} to stop the work, or {@code null}
+     */
+    Budget(int maxStates, long maxBytes, long timeoutNanos, AtomicBoolean cancelled) {
+        this.maxStates = maxStates;
+        this.maxBytes = maxBytes;
+        this.hasDeadline = timeoutNanos != Long.MAX_VALUE;
+        this.deadline = hasDeadline ? System.nanoTime() + timeoutNanos : 0;
+        this.cancelled = cancelled;
+    }
+
+    /** Throws if {@code states} or {@code bytes} is over its limit. */
+    void checkSize(int states, long bytes) {
+        if (states > maxStates) {
+            throw new BudgetExceededException(BudgetExceededException.Limit.STATES, states, bytes);
+        }
+        if (bytes > maxBytes) {
+            throw new BudgetExceededException(BudgetExceededException.Limit.MEMORY, states, bytes);
+        }
+    }
+
+    /** Throws if the work was cancelled or is past the deadline. */
+    void checkTime(int states, long bytes) {
+        if (cancelled != null && cancelled.get()) {
+            throw new BudgetExceededException(BudgetExceededException.Limit.CANCELLED, states, bytes);
+        }
+        if (hasDeadline && System.nanoTime() - deadline > 0) {
+            throw new BudgetExceededException(BudgetExceededException.Limit.DEADLINE, states, bytes);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package stateMachine;
+
+/**
+ * Determinization or minimization stopped by a {@link Budget}. Unchecked, so
+ * it passes through pool tasks unchanged; nothing of the unfinished result is
+ * kept.
+ */
+class BudgetExceededException extends RuntimeException {
+    enum Limit {
+        STATES, MEMORY, DEADLINE, CANCELLED
+    }
+
+    private final Limit limit;
+    private final int states;
+    private final long bytes;
+
+    BudgetExceededException(Limit limit, int states, long bytes) {
+        super(limit + " budget exceeded after " + states + " states, about " + bytes + " bytes");
+        this.limit = limit;
+        this.states = states;
+        this.bytes = bytes;
+    }
+
+    Limit getLimit() {
+        return limit;
+    }
+
+    /** States built when the work stopped. */
+    int getStates() {
+        return states;
+    }
+
+    /** Estimated bytes of those states. */
+    long getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,229 @@
+package stateMachine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Flat transition table of a deterministic {@link StateMachine.Graph}: one row
+ * per state, one column per alphabet symbol, -1 for a missing edge. Input
+ * characters and bytes are mapped to columns through lookup arrays, so
+ * matching allocates nothing and touches no maps. Only one-character symbols
+ * can be reached from {@code CharSequence} and {@code byte[]} input; bytes are
+ * read as Latin-1 characters.
+ * <p>
+ * Symbols whose columns are equal in every state are merged into one class,
+ * and the table keeps one column per class. The lookup arrays map characters
+ * and bytes straight to classes, so a table over a wide alphabet in which
+ * few symbols are told apart stays narrow enough for the cache.
+ * <p>
+ * Immutable: the table is copied on construction and no array escapes, so
+ * one instance can be matched against from any number of threads without
+ * locks. {@link SwappableMatcher} replaces it atomically.
+ */
+final class CompiledDfa implements Matcher {
+    private final String[] alphabet;
+    private final int symbolCount;
+    private final int stateCount;
+    private final int initState;
+    private final int classCount;
+    /** Class of every column, and one row of {@code classCount} targets per state. */
+    private final int[] columnClasses;
+    private final int[] table;
+    private final long[] finals;
+    private final int[] charClasses;
+    private final int[] byteClasses;
+
+    CompiledDfa(String[] alphabet, Dfa dfa) {
+        this.alphabet = alphabet.clone();
+        this.symbolCount = dfa.symbolCount;
+        this.stateCount = dfa.stateCount;
+        this.initState = dfa.initState;
+        this.columnClasses = symbolClasses(dfa);
+        int classCount = 0;
+        for (int c : columnClasses) {
+            classCount = Math.max(classCount, c + 1);
+        }
+        this.classCount = classCount;
+        this.table = new int[stateCount * classCount];
+        for (int s = 0; s < stateCount; s++) {
+            for (int a = 0; a < symbolCount; a++) {
+                table[s * classCount + columnClasses[a]] = dfa.next(s, a);
+            }
+        }
+        this.finals = new long[(stateCount + 63) >>> 6];
+        for (int s = 0; s < stateCount; s++) {
+            if (dfa.finals[s]) {
+                finals[s >>> 6] |= 1L << s;
+            }
+        }
+
+        this.charClasses = toClasses(charColumns(alphabet));
+        this.byteClasses = toClasses(byteColumns(alphabet));
+    }
+
+    /**
+     * Class of every column of {@code dfa}: columns with the same target in
+     * every state share a class, numbered in order of their first column.
+     */
+    static int[] symbolClasses(Dfa dfa) {
+        int k = dfa.symbolCount;
+        long[] hashes = new long[k];
+        for (int s = 0; s < dfa.stateCount; s++) {
+            for (int a = 0; a < k; a++) {
+                hashes[a] = 31 * hashes[a] + dfa.next(s, a);
+            }
+        }
+        int[] classes = new int[k];
+        int count = 0;
+        Map<Long, List<Integer>> firsts = new HashMap<>();
+        for (int a = 0; a < k; a++) {
+            List<Integer> candidates = firsts.computeIfAbsent(hashes[a], key -> new ArrayList<>());
+            classes[a] = -1;
+            for (int first : candidates) {
+                if (sameColumn(dfa, first, a)) {
+                    classes[a] = classes[first];
+                    break;
+                }
+            }
+            if (classes[a] == -1) {
+                classes[a] = count++;
+                candidates.add(a);
+            }
+        }
+        return classes;
+    }
+
+    private static boolean sameColumn(Dfa dfa, int a, int b) {
+        for (int s = 0; s < dfa.stateCount; s++) {
+            if (dfa.next(s, a) != dfa.next(s, b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int[] toClasses(int[] columns) {
+        int[] classes = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            classes[i] = columns[i] >= 0 ? columnClasses[columns[i]] : -1;
+        }
+        return classes;
+    }
+
+    /** Column of every character that is a symbol of {@code alphabet}, -1 elsewhere. */
+    static int[] charColumns(String[] alphabet) {
+        int maxChar = -1;
+        for (String symbol : alphabet) {
+            if (symbol.length() == 1) {
+                maxChar = Math.max(maxChar, symbol.charAt(0));
+            }
+        }
+        int[] columns = new int[maxChar + 1];
+        Arrays.fill(columns, -1);
+        for (int a = 0; a < alphabet.length; a++) {
+            if (alphabet[a].length() == 1) {
+                columns[alphabet[a].charAt(0)] = a;
+            }
+        }
+        return columns;
+    }
+
+    /** Column of every byte, read as a Latin-1 character, or -1. */
+    static int[] byteColumns(String[] alphabet) {
+        int[] columns = new int[256];
+        Arrays.fill(columns, -1);
+        for (int a = 0; a < alphabet.length; a++) {
+            if (alphabet[a].length() == 1 && alphabet[a].charAt(0) < 256) {
+                columns[alphabet[a].charAt(0)] = a;
+            }
+        }
+        return columns;
+    }
+
+    int stateCount() {
+        return stateCount;
+    }
+
+    int symbolCount() {
+        return symbolCount;
+    }
+
+    /** Columns of the transition table, at most {@link #symbolCount()}. */
+    int classCount() {
+        return classCount;
+    }
+
+    /** Class of the column {@code symbol}; symbols of one class lead to the same states. */
+    int symbolClass(int symbol) {
+        return columnClasses[symbol];
+    }
+
+    int initState() {
+        return initState;
+    }
+
+    /** Column of {@code symbol}, or -1 if it is not in the alphabet. */
+    int symbolIndex(String symbol) {
+        int index = Arrays.binarySearch(alphabet, symbol);
+        return index >= 0 ? index : -1;
+    }
+
+    String symbol(int index) {
+        return alphabet[index];
+    }
+
+    /** Next state, or -1 once the automaton is stuck. */
+    int step(int state, int symbol) {
+        return table[state * classCount + columnClasses[symbol]];
+    }
+
+    /** Next state on the byte {@code b}, read as a Latin-1 character, or -1. */
+    int next(int state, byte b) {
+        int symbolClass = byteClasses[b & 0xFF];
+        return symbolClass >= 0 ? table[state * classCount + symbolClass] : -1;
+    }
+
+    boolean isFinal(int state) {
+        return (finals[state >>> 6] & (1L << state)) != 0;
+    }
+
+    @Override
+    public boolean matches(CharSequence input) {
+        int[] table = this.table, classes = charClasses;
+        int width = classCount, state = initState;
+        for (int i = 0, length = input.length(); i < length && state >= 0; i++) {
+            char c = input.charAt(i);
+            if (c >= classes.length || classes[c] < 0) {
+                return false;
+            }
+            state = table[state * width + classes[c]];
+        }
+        return state >= 0 && isFinal(state);
+    }
+
+    @Override
+    public boolean matches(byte[] input, int offset, int length) {
+        int[] table = this.table, classes = byteClasses;
+        int width = classCount, state = initState;
+        for (int i = offset, end = offset + length; i < end && state >= 0; i++) {
+            int symbolClass = classes[input[i] & 0xFF];
+            if (symbolClass < 0) {
+                return false;
+            }
+            state = table[state * width + symbolClass];
+        }
+        return state >= 0 && isFinal(state);
+    }
+
+    /** Runs a sequence of column indexes, as returned by {@link #symbolIndex}. */
+    boolean matches(int[] symbols) {
+        int state = initState;
+        for (int i = 0; i < symbols.length && state >= 0; i++) {
+            state = table[state * classCount + columnClasses[symbols[i]]];
+        }
+        return state >= 0 && isFinal(state);
+    }
+}
@@ -0,0 +1,282 @@
+package stateMachine;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Subset construction over an {@link Nfa}. States are numbered exactly as the
+ * recursive construction numbered them: first every NFA state in order
+ * followed by the subsets its own transitions lead to, then the subsets found
+ * by a depth-first walk from the initial state. The walk uses an explicit
+ * stack, so deep automata cannot overflow the call stack. A {@link Budget}
+ * is checked on every new subset and every few hundred expansions.
+ */
+final class Determinizer {
+    /** Approximate bytes per built state besides its row and members. */
+    static final int STATE_OVERHEAD = 64;
+
+    private final Nfa nfa;
+    private final Budget budget;
+    private final int symbolCount;
+    private final Map<Subset, Integer> ids = new HashMap<>();
+    private final int[] singletonIds;
+    private int[][] subsets = new int[16][];
+    private int[] transitions;
+    private boolean[] finals = new boolean[16];
+    private boolean[] used = new boolean[16];
+    private int size;
+    private long bytes;
+    private int steps;
+
+    private final int[] mark;
+    private int stamp;
+    private int[] buffer = new int[16];
+    private int[] pairSymbols = new int[16];
+    private int[] pairStates = new int[16];
+    private int[] sortedStates = new int[16];
+
+    private Determinizer(Nfa nfa, Budget budget) {
+        this.nfa = nfa;
+        this.budget = budget;
+        this.symbolCount = nfa.symbolCount;
+        this.singletonIds = new int[nfa.stateCount];
+        this.transitions = new int[16 * symbolCount];
+        this.mark = new int[nfa.stateCount];
+    }
+
+    /**
+     * @param initState NFA state the walk starts from, or -1 if the graph has no
+     *                  node with the initial name; an empty state is added then
+     */
+    static Dfa determinize(Nfa nfa, int initState, boolean deleteUnused) {
+        return determinize(nfa, initState, deleteUnused, Budget.UNLIMITED);
+    }
+
+    static Dfa determinize(Nfa nfa, int initState, boolean deleteUnused, Budget budget) {
+        Determinizer determinizer = new Determinizer(nfa, budget);
+        for (int i = 0; i < nfa.stateCount; i++) {
+            determinizer.tick();
+            determinizer.buildSingleton(i);
+        }
+        int init = initState >= 0 ? determinizer.singletonIds[initState] :
+                determinizer.intern(new int[0]);
+        determinizer.walk(init);
+        return determinizer.result(init, deleteUnused);
+    }
+
+    private void buildSingleton(int state) {
+        int id = intern(new int[] {state});
+        singletonIds[state] = id;
+        finals[id] = nfa.isClosureFinal(state);
+
+        int pairs = 0;
+        for (int from : nfa.closure(state)) {
+            for (int e = nfa.edgeStart[from]; e < nfa.edgeStart[from + 1]; e++) {
+                int symbol = nfa.edgeSymbol[e];
+                for (int to : nfa.closure(nfa.edgeTarget[e])) {
+                    if (pairs == pairStates.length) {
+                        pairSymbols = Arrays.copyOf(pairSymbols, pairs * 2);
+                        pairStates = Arrays.copyOf(pairStates, pairs * 2);
+                    }
+                    pairSymbols[pairs] = symbol;
+                    pairStates[pairs++] = to;
+                }
+            }
+        }
+        if (pairs == 0) {
+            return;
+        }
+
+        int[] start = new int[symbolCount + 1];
+        for (int p = 0; p < pairs; p++) {
+            start[pairSymbols[p] + 1]++;
+        }
+        for (int a = 0; a < symbolCount; a++) {
+            start[a + 1] += start[a];
+        }
+        if (sortedStates.length < pairs) {
+            sortedStates = new int[pairStates.length];
+        }
+        int[] fill = Arrays.copyOf(start, symbolCount);
+        for (int p = 0; p < pairs; p++) {
+            sortedStates[fill[pairSymbols[p]]++] = pairStates[p];
+        }
+        for (int a = 0; a < symbolCount; a++) {
+            if (start[a] == start[a + 1]) {
+                continue;
+            }
+            stamp++;
+            int count = 0;
+            for (int p = start[a]; p < start[a + 1]; p++) {
+                count = collect(sortedStates[p], count);
+            }
+            setTransition(id, a, internBuffer(count));
+        }
+    }
+
+    private void buildSubset(int id) {
+        int[] members = subsets[id];
+        boolean isFinal = false;
+        for (int member : members) {
+            isFinal = isFinal || finals[singletonIds[member]];
+        }
+        finals[id] = isFinal;
+        for (int a = 0; a < symbolCount; a++) {
+            stamp++;
+            int count = 0;
+            for (int member : members) {
+                int target = transitions[singletonIds[member] * symbolCount + a];
+                if (target >= 0) {
+                    for (int state : subsets[target]) {
+                        count = collect(state, count);
+                    }
+                }
+            }
+            if (count > 0) {
+                setTransition(id, a, internBuffer(count));
+            }
+        }
+    }
+
+    private void walk(int init) {
+        int[] stackStates = new int[16], stackSymbols = new int[16];
+        int top = 0;
+        used[init] = true;
+        expand(init);
+        stackStates[top] = init;
+        stackSymbols[top++] = 0;
+        while (top > 0) {
+            int state = stackStates[top - 1], a = stackSymbols[top - 1], next = -1;
+            while (a < symbolCount && next == -1) {
+                int target = transitions[state * symbolCount + a++];
+                if (target >= 0 && !used[target]) {
+                    next = target;
+                }
+            }
+            stackSymbols[top - 1] = a;
+            if (next == -1) {
+                top--;
+                continue;
+            }
+            used[next] = true;
+            expand(next);
+            if (top == stackStates.length) {
+                stackStates = Arrays.copyOf(stackStates, top * 2);
+                stackSymbols = Arrays.copyOf(stackSymbols, top * 2);
+            }
+            stackStates[top] = next;
+            stackSymbols[top++] = 0;
+        }
+    }
+
+    private void expand(int id) {
+        tick();
+        if (subsets[id].length > 1) {
+            buildSubset(id);
+        }
+    }
+
+    private void tick() {
+        if (++steps % Budget.TIME_CHECK_INTERVAL == 0) {
+            budget.checkTime(size, bytes);
+        }
+    }
+
+    /** Estimated bytes of a built state with {@code members} NFA states. */
+    static long cost(int symbolCount, int members) {
+        return STATE_OVERHEAD + (long)Integer.BYTES * (symbolCount + members);
+    }
+
+    private Dfa result(int init, boolean deleteUnused) {
+        return result(symbolCount, size, transitions, finals, used, subsets, init, deleteUnused);
+    }
+
+    /** Drops the states not marked {@code used} if asked to and renumbers the rest. */
+    static Dfa result(int symbolCount, int size, int[] transitions, boolean[] finals,
+                      boolean[] used, int[][] subsets, int init, boolean deleteUnused) {
+        int[] newIds = new int[size];
+        int count = 0;
+        for (int id = 0; id < size; id++) {
+            newIds[id] = !deleteUnused || used[id] ? count++ : -1;
+        }
+        int[] resTransitions = new int[count * symbolCount];
+        boolean[] resFinals = new boolean[count];
+        int[][] resSubsets = new int[count][];
+        for (int id = 0; id < size; id++) {
+            int newId = newIds[id];
+            if (newId == -1) {
+                continue;
+            }
+            resFinals[newId] = finals[id];
+            resSubsets[newId] = subsets[id];
+            for (int a = 0; a < symbolCount; a++) {
+                int target = transitions[id * symbolCount + a];
+                resTransitions[newId * symbolCount + a] = target >= 0 ? newIds[target] : -1;
+            }
+        }
+        return new Dfa(symbolCount, resTransitions, resFinals, newIds[init], resSubsets, size);
+    }
+
+    private int collect(int state, int count) {
+        if (mark[state] != stamp) {
+            mark[state] = stamp;
+            if (count == buffer.length) {
+                buffer = Arrays.copyOf(buffer, count * 2);
+            }
+            buffer[count++] = state;
+        }
+        return count;
+    }
+
+    private int internBuffer(int count) {
+        int[] members = Arrays.copyOf(buffer, count);
+        Arrays.sort(members);
+        return intern(members);
+    }
+
+    private int intern(int[] members) {
+        Subset key = new Subset(members);
+        Integer id = ids.get(key);
+        if (id != null) {
+            return id;
+        }
+        bytes += cost(symbolCount, members.length);
+        budget.checkSize(size + 1, bytes);
+        if (size == subsets.length) {
+            int capacity = size * 2;
+            subsets = Arrays.copyOf(subsets, capacity);
+            finals = Arrays.copyOf(finals, capacity);
+            used = Arrays.copyOf(used, capacity);
+            transitions = Arrays.copyOf(transitions, capacity * symbolCount);
+        }
+        subsets[size] = members;
+        Arrays.fill(transitions, size * symbolCount, (size + 1) * symbolCount, -1);
+        ids.put(key, size);
+        return size++;
+    }
+
+    private void setTransition(int id, int symbol, int target) {
+        transitions[id * symbolCount + symbol] = target;
+    }
+
+    static final class Subset {
+        final int[] members;
+        final int hash;
+
+        Subset(int[] members) {
+            this.members = members;
+            this.hash = Arrays.hashCode(members);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Subset && Arrays.equals(members, ((Subset)obj).members);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package stateMachine;
+
+/**
+ * Integer view of a deterministic {@link StateMachine.Graph}: row {@code s} of
+ * {@code transitions} holds the target of state {@code s} for every symbol of
+ * the sorted alphabet, or -1 when the state has no such edge.
+ */
+final class Dfa {
+    final int stateCount;
+    final int symbolCount;
+    final int[] transitions;
+    final boolean[] finals;
+    final int initState;
+    /** NFA states behind every DFA state, or {@code null} if not built by subset construction. */
+    final int[][] subsets;
+    /** States created while building, unused ones included. */
+    final int builtStates;
+
+    Dfa(int symbolCount, int[] transitions, boolean[] finals, int initState, int[][] subsets) {
+        this(symbolCount, transitions, finals, initState, subsets, finals.length);
+    }
+
+    Dfa(int symbolCount, int[] transitions, boolean[] finals, int initState, int[][] subsets,
+        int builtStates) {
+        this.stateCount = finals.length;
+        this.symbolCount = symbolCount;
+        this.transitions = transitions;
+        this.finals = finals;
+        this.initState = initState;
+        this.subsets = subsets;
+        this.builtStates = builtStates;
+    }
+
+    int next(int state, int symbol) {
+        return transitions[state * symbolCount + symbol];
+    }
+}
@@ -0,0 +1,173 @@
+package stateMachine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Language equivalence and inclusion of graphs, with a counterexample when
+ * they fail. Nondeterministic graphs are determinized on a copy first; a
+ * missing transition is read as a move to a rejecting sink.
+ * <p>
+ * Equivalence is the Hopcroft-Karp check: states of both automata share one
+ * union-find, pairs are merged as they are reached, and a pair is only
+ * explored if its states are not yet known to be equivalent, so the work is
+ * near-linear in the total number of states. Inclusion cannot merge pairs
+ * and walks the reachable product instead, stopping at the first pair that
+ * is final in the subset candidate only. Both searches are breadth-first, so the
+ * counterexample is short.
+ */
+final class Equivalence {
+    private Equivalence() {}
+
+    static boolean equivalent(StateMachine.Graph x, StateMachine.Graph y) {
+        return counterexample(x, y) == null;
+    }
+
+    /** Whether the language of {@code sub} is a subset of that of {@code sup}. */
+    static boolean isSubsetOf(StateMachine.Graph sub, StateMachine.Graph sup) {
+        return inclusionCounterexample(sub, sup) == null;
+    }
+
+    /** Symbols of a word accepted by exactly one of the graphs, or {@code null} if there is none. */
+    static List<String> counterexample(StateMachine.Graph x, StateMachine.Graph y) {
+        CompiledDfa left = dfa(x), right = dfa(y);
+        String[] alphabet = Product.alphabet(left, right);
+        int[] leftColumns = Product.columns(left, alphabet), rightColumns = Product.columns(right, alphabet);
+        int n1 = left.stateCount(), sink = n1 + right.stateCount();
+        int[] parent = new int[sink + 1];
+        for (int s = 0; s <= sink; s++) {
+            parent[s] = s;
+        }
+
+        Search search = new Search();
+        int p0 = left.initState() >= 0 ? left.initState() : sink;
+        int q0 = right.initState() >= 0 ? n1 + right.initState() : sink;
+        search.add(p0, q0, -1, -1);
+        union(parent, p0, q0);
+        for (int i = 0; i < search.count; i++) {
+            int p = search.lefts[i], q = search.rights[i];
+            boolean f1 = p != sink && left.isFinal(p), f2 = q != sink && right.isFinal(q - n1);
+            if (f1 != f2) {
+                return search.word(i, alphabet);
+            }
+            for (int a = 0; a < alphabet.length; a++) {
+                int p1 = step(left, p, leftColumns[a], 0, sink);
+                int q1 = step(right, q, rightColumns[a], n1, sink);
+                if (union(parent, p1, q1)) {
+                    search.add(p1, q1, i, a);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Symbols of a word {@code sub} accepts and {@code sup} rejects, the proof
+     * that {@code sub} is not a subset of {@code sup}, or {@code null} if it is.
+     */
+    static List<String> inclusionCounterexample(StateMachine.Graph sub, StateMachine.Graph sup) {
+        CompiledDfa left = dfa(sub), right = dfa(sup);
+        String[] alphabet = Product.alphabet(left, right);
+        int[] leftColumns = Product.columns(left, alphabet), rightColumns = Product.columns(right, alphabet);
+        int sink = -1;
+        if (left.initState() < 0) {
+            return null;
+        }
+
+        Search search = new Search();
+        LongIntMap seen = new LongIntMap(left.stateCount());
+        search.add(left.initState(), right.initState(), -1, -1);
+        seen.putIfAbsent(pack(left.initState(), right.initState()), 0);
+        for (int i = 0; i < search.count; i++) {
+            int p = search.lefts[i], q = search.rights[i];
+            if (left.isFinal(p) && (q == sink || !right.isFinal(q))) {
+                return search.word(i, alphabet);
+            }
+            for (int a = 0; a < alphabet.length; a++) {
+                int p1 = step(left, p, leftColumns[a], 0, sink);
+                if (p1 == sink) {
+                    continue;
+                }
+                int q1 = step(right, q, rightColumns[a], 0, sink);
+                if (seen.putIfAbsent(pack(p1, q1), search.count) == search.count) {
+                    search.add(p1, q1, i, a);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static CompiledDfa dfa(StateMachine.Graph graph) {
+        try {
+            return graph.compile();
+        } catch (IllegalStateException e) {
+            StateMachine.Graph copy = StateMachine.Graph.copy(graph);
+            copy.determinize(true);
+            return copy.compile();
+        }
+    }
+
+    /** Successor of {@code state} offset by {@code offset}, or {@code sink} when there is none. */
+    private static int step(CompiledDfa dfa, int state, int column, int offset, int sink) {
+        if (state == sink || column < 0) {
+            return sink;
+        }
+        int target = dfa.step(state - offset, column);
+        return target >= 0 ? target + offset : sink;
+    }
+
+    /** Merges the classes of {@code x} and {@code y}; false if they already were one. */
+    private static boolean union(int[] parent, int x, int y) {
+        int rx = find(parent, x), ry = find(parent, y);
+        if (rx == ry) {
+            return false;
+        }
+        parent[rx] = ry;
+        return true;
+    }
+
+    private static int find(int[] parent, int x) {
+        while (parent[x] != x) {
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    private static long pack(int p, int q) {
+        return (long)(p + 1) << 32 | (q + 1) & 0xFFFFFFFFL;
+    }
+
+    /** Breadth-first queue of state pairs, each remembering the pair and symbol it came from. */
+    private static final class Search {
+        int[] lefts = new int[16];
+        int[] rights = new int[16];
+        int[] parents = new int[16];
+        int[] symbols = new int[16];
+        int count;
+
+        void add(int left, int right, int parent, int symbol) {
+            if (count == lefts.length) {
+                lefts = Arrays.copyOf(lefts, count * 2);
+                rights = Arrays.copyOf(rights, count * 2);
+                parents = Arrays.copyOf(parents, count * 2);
+                symbols = Arrays.copyOf(symbols, count * 2);
+            }
+            lefts[count] = left;
+            rights[count] = right;
+            parents[count] = parent;
+            symbols[count++] = symbol;
+        }
+
+        List<String> word(int pair, String[] alphabet) {
+            List<String> word = new ArrayList<>();
+            for (int i = pair; parents[i] >= 0; i = parents[i]) {
+                word.add(alphabet[symbols[i]]);
+            }
+            Collections.reverse(word);
+            return word;
+        }
+    }
+}
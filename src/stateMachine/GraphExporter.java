@@ -0,0 +1,248 @@
+package stateMachine;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SortedSet;
+
+/**
+ * Writes a {@link StateMachine.Graph} node by node to a buffered
+ * {@link Writer}, with no string built per node:
+ * <ul>
+ * <li>{@link Format#TEXT}: the listing of {@link StateMachine.Graph#printGraph};
+ * <li>{@link Format#DOT}: a Graphviz digraph;
+ * <li>{@link Format#INPUT}: the format {@link GraphReader} reads. A graph
+ * written in full reads back with the same language, and the node set is
+ * preserved except in two cases. A node with several names gets them joined
+ * by commas and reads back under that one name. A node that is not final
+ * and has no edges in or out has no line the format can express and is left
+ * out; it accepts nothing, so the language is unchanged. Nodes may come back
+ * numbered differently; {@code ExportCheck} in the benchmarks module checks
+ * all of this on random graphs.
+ * </ul>
+ * Huge graphs can be cut down to every {@code stride}-th node, up to
+ * {@code maxNodes} of them; edges of written nodes are kept whatever their
+ * target. Text and DOT output then end with a note of how much was written.
+ */
+final class GraphExporter {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    enum Format {
+        TEXT, DOT, INPUT
+    }
+
+    private final Format format;
+    private final int maxNodes;
+    private final int stride;
+
+    GraphExporter(Format format) {
+        this(format, Integer.MAX_VALUE, 1);
+    }
+
+    /**
+     * @param maxNodes most nodes written
+     * @param stride   only nodes whose index is a multiple of it are written
+     */
+    GraphExporter(Format format, int maxNodes, int stride) {
+        if (maxNodes < 0 || stride < 1) {
+            throw new IllegalArgumentException("maxNodes " + maxNodes + ", stride " + stride);
+        }
+        this.format = format;
+        this.maxNodes = maxNodes;
+        this.stride = stride;
+    }
+
+    /** Writes {@code graph} to {@code out}, which is neither flushed nor closed. */
+    void export(StateMachine.Graph graph, Writer out) throws IOException {
+        new Export(graph, out).run();
+    }
+
+    /** Writes {@code graph} in the platform charset, flushing but not closing {@code os}. */
+    void export(StateMachine.Graph graph, OutputStream os) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(os), BUFFER_SIZE);
+        export(graph, out);
+        out.flush();
+    }
+
+    /** Writes {@code graph} in UTF-8, encoding into the channel's own buffer; the channel stays open. */
+    void export(StateMachine.Graph graph, WritableByteChannel channel) throws IOException {
+        Writer out = Channels.newWriter(channel, StandardCharsets.UTF_8);
+        export(graph, out);
+        out.flush();
+    }
+
+    void export(StateMachine.Graph graph, Path path) throws IOException {
+        try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            export(graph, out);
+        }
+    }
+
+    private final class Export implements StateMachine.Graph.EdgeVisitor {
+        private final StateMachine.Graph graph;
+        private final Writer out;
+        private final char[] digits = new char[10];
+        private int from;
+        private boolean firstEdge;
+
+        Export(StateMachine.Graph graph, Writer out) {
+            this.graph = graph;
+            this.out = out;
+        }
+
+        void run() throws IOException {
+            header();
+            int count = graph.nodeCount(), written = 0;
+            for (int node = 0; node < count && written < maxNodes; node += stride) {
+                from = node;
+                firstEdge = true;
+                switch (format) {
+                    case TEXT:
+                        out.write("Node: ");
+                        writeList(graph.nodeName(node));
+                        out.write(graph.isFinal(node) ? " [FINAL]\n" : "\n");
+                        graph.forEachEdge(node, this);
+                        out.write("\n\n");
+                        break;
+                    case DOT:
+                        out.write("  n");
+                        writeInt(node);
+                        out.write(" [label=\"");
+                        writeJoined(graph.nodeName(node), true);
+                        out.write(graph.isFinal(node) ? "\", shape=doublecircle];\n" :
+                                "\", shape=circle];\n");
+                        graph.forEachEdge(node, this);
+                        break;
+                    case INPUT:
+                        graph.forEachEdge(node, this);
+                        if (graph.isFinal(node)) {
+                            writeJoined(graph.nodeName(node), false);
+                            out.write(" #\n");
+                        }
+                        break;
+                }
+                written++;
+            }
+            footer(written, count);
+        }
+
+        private void header() throws IOException {
+            switch (format) {
+                case TEXT:
+                    out.write("initNode = " + graph.getInitNode() + ", lambda = " +
+                            graph.getLambda() + "\n");
+                    break;
+                case DOT:
+                    out.write("digraph G {\n  rankdir=LR;\n");
+                    int init = graph.initNodeIndex();
+                    if (init >= 0) {
+                        out.write("  start [shape=point];\n  start -> n" + init + ";\n");
+                    }
+                    break;
+                case INPUT:
+                    out.write("lambda = " + graph.getLambda() + "\n");
+                    if (graph.getInitNode() != null) {
+                        out.write("initnode = " + graph.getInitNode() + "\n");
+                    }
+                    break;
+            }
+        }
+
+        private void footer(int written, int count) throws IOException {
+            boolean partial = stride > 1 || written < count;
+            if (format == Format.TEXT && partial) {
+                out.write("[" + written + " of " + count + " nodes]\n");
+            } else if (format == Format.DOT) {
+                if (partial) {
+                    out.write("  // " + written + " of " + count + " nodes\n");
+                }
+                out.write("}\n");
+            }
+        }
+
+        @Override
+        public void edge(String symbol, int target) throws IOException {
+            switch (format) {
+                case TEXT:
+                    out.write(firstEdge ? "Edges: " : ", ");
+                    out.write(symbol);
+                    out.write("=>");
+                    writeList(graph.nodeName(target));
+                    break;
+                case DOT:
+                    out.write("  n");
+                    writeInt(from);
+                    out.write(" -> n");
+                    writeInt(target);
+                    out.write(" [label=\"");
+                    writeEscaped(symbol);
+                    out.write("\"];\n");
+                    break;
+                case INPUT:
+                    writeJoined(graph.nodeName(from), false);
+                    out.write(' ');
+                    writeJoined(graph.nodeName(target), false);
+                    out.write(' ');
+                    out.write(symbol);
+                    out.write('\n');
+                    break;
+            }
+            firstEdge = false;
+        }
+
+        /** Writes {@code names} as {@link java.util.AbstractCollection#toString()} does. */
+        private void writeList(SortedSet<String> names) throws IOException {
+            out.write('[');
+            boolean first = true;
+            for (String name : names) {
+                if (!first) {
+                    out.write(", ");
+                }
+                out.write(name);
+                first = false;
+            }
+            out.write(']');
+        }
+
+        private void writeJoined(SortedSet<String> names, boolean escape) throws IOException {
+            boolean first = true;
+            for (String name : names) {
+                if (!first) {
+                    out.write(',');
+                }
+                if (escape) {
+                    writeEscaped(name);
+                } else {
+                    out.write(name);
+                }
+                first = false;
+            }
+        }
+
+        private void writeInt(int value) throws IOException {
+            int start = digits.length;
+            do {
+                digits[--start] = (char)('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+            out.write(digits, start, digits.length - start);
+        }
+
+        /** Writes {@code text} for a DOT string, quotes and backslashes escaped. */
+        private void writeEscaped(String text) throws IOException {
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '"' || c == '\\') {
+                    out.write('\\');
+                }
+                out.write(c);
+            }
+        }
+    }
+}
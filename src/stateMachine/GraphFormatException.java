@@ -0,0 +1,19 @@
+package stateMachine;
+
+import java.io.IOException;
+
+/**
+ * Malformed line in the graph text format.
+ */
+class GraphFormatException extends IOException {
+    private final int line;
+
+    GraphFormatException(int line, String message) {
+        super("line " + line + ": " + message);
+        this.line = line;
+    }
+
+    int getLine() {
+        return line;
+    }
+}
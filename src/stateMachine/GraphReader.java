@@ -0,0 +1,282 @@
+package stateMachine;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Loader for the graph text format:
+ * <pre>
+ * lambda = 0
+ * initnode = S
+ * S A a
+ * A B b #
+ * B #
+ * C
+ * </pre>
+ * A lone name marks its node final, as {@code X #} does.
+ * Lines are tokenized by hand in a reusable char buffer, and node names and
+ * symbols are resolved through hash tables that compare against the buffer,
+ * so a name is only turned into a {@code String} the first time it is seen.
+ */
+final class GraphReader {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_FIELDS = 4;
+
+    private final Reader reader;
+    private final StateMachine.Graph graph = new StateMachine.Graph();
+    private final NameTable nodeNames = new NameTable();
+    private final NameTable symbolNames = new NameTable();
+    private final int[] starts = new int[MAX_FIELDS + 1];
+    private final int[] ends = new int[MAX_FIELDS + 1];
+    private char[] buffer = new char[BUFFER_SIZE];
+    private String lambda;
+    private int line;
+    private int edges;
+
+    private GraphReader(Reader reader) {
+        this.reader = reader;
+        this.lambda = graph.getLambda();
+    }
+
+    static StateMachine.Graph read(Reader reader) throws IOException {
+        long start = System.nanoTime();
+        GraphReader graphReader = new GraphReader(reader);
+        StateMachine.Graph graph = graphReader.read();
+        Instrumentation.listener().parsed(graphReader.line, graphReader.nodeNames.size,
+                graphReader.edges, graphReader.symbolNames.size, System.nanoTime() - start);
+        return graph;
+    }
+
+    static StateMachine.Graph read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+             Reader reader = Channels.newReader(channel, StandardCharsets.UTF_8)) {
+            return read(reader);
+        }
+    }
+
+    private StateMachine.Graph read() throws IOException {
+        int start = 0, pos = 0, limit = 0;
+        while (true) {
+            if (pos == limit) {
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, limit - start);
+                    limit -= start;
+                    pos -= start;
+                    start = 0;
+                }
+                if (limit == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int count = reader.read(buffer, limit, buffer.length - limit);
+                if (count < 0) {
+                    if (start < limit) {
+                        parseLine(start, limit);
+                    }
+                    return graph;
+                }
+                limit += count;
+                continue;
+            }
+            if (buffer[pos] == '\n') {
+                parseLine(start, pos);
+                start = ++pos;
+            } else {
+                pos++;
+            }
+        }
+    }
+
+    private void parseLine(int from, int to) throws GraphFormatException {
+        line++;
+        if (to > from && buffer[to - 1] == '\r') {
+            to--;
+        }
+        if (indexOf('=', from, to) != -1 && parseDirective(from, to)) {
+            return;
+        }
+        int count = tokenize(from, to, false);
+        if (count == 0) {
+            return;
+        }
+        boolean isFinal = count != 3, marked = count == 2 || count == 4;
+        if (count > 4 || (marked && !isToken(count - 1, "#"))) {
+            throw new GraphFormatException(line,
+                    "expected 'X Y symbol', 'X Y symbol #', 'X #' or 'X'");
+        }
+        int from1 = node(0);
+        if (isFinal) {
+            graph.setFinal(from1);
+        }
+        if (count > 2) {
+            int to1 = node(1);
+            graph.addEdge(from1, to1, symbol(2));
+            edges++;
+        }
+    }
+
+    private boolean parseDirective(int from, int to) throws GraphFormatException {
+        int count = tokenize(from, to, true);
+        boolean isLambda = isToken(0, "lambda"), isInitNode = isToken(0, "initnode");
+        if (!isLambda && !isInitNode) {
+            return false;
+        }
+        if (count != 2) {
+            throw new GraphFormatException(line, "expected '" +
+                    (isLambda ? "lambda" : "initnode") + " = <name>'");
+        }
+        String value = new String(buffer, starts[1], ends[1] - starts[1]);
+        if (isLambda) {
+            lambda = value;
+            graph.setLambda(value);
+        } else {
+            graph.setInitNode(value);
+        }
+        return true;
+    }
+
+    private int tokenize(int from, int to, boolean splitOnEquals) throws GraphFormatException {
+        int count = 0, i = from;
+        while (true) {
+            while (i < to && isSeparator(buffer[i], splitOnEquals)) {
+                i++;
+            }
+            if (i == to) {
+                return count;
+            }
+            if (count == starts.length) {
+                throw new GraphFormatException(line, "too many fields");
+            }
+            starts[count] = i;
+            while (i < to && !isSeparator(buffer[i], splitOnEquals)) {
+                i++;
+            }
+            ends[count++] = i;
+        }
+    }
+
+    private static boolean isSeparator(char c, boolean splitOnEquals) {
+        return c == ' ' || c == '\t' || (splitOnEquals && c == '=');
+    }
+
+    private int indexOf(char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isToken(int token, String text) {
+        if (ends[token] - starts[token] != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.toLowerCase(buffer[starts[token] + i]) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int node(int token) {
+        int start = starts[token], end = ends[token];
+        int id = nodeNames.find(buffer, start, end);
+        if (id == -1) {
+            id = nodeNames.add(new String(buffer, start, end - start));
+            graph.addNode(nodeNames.name(id));
+        }
+        return id;
+    }
+
+    private int symbol(int token) {
+        int start = starts[token], end = ends[token];
+        if (NameTable.matches(lambda, buffer, start, end)) {
+            return -1;
+        }
+        int id = symbolNames.find(buffer, start, end);
+        if (id == -1) {
+            id = symbolNames.add(new String(buffer, start, end - start));
+            graph.addSymbol(symbolNames.name(id));
+        }
+        return id;
+    }
+
+    /** Open-addressing table from names to dense ids, probed with char ranges. */
+    private static final class NameTable {
+        private String[] names = new String[16];
+        private int[] hashes = new int[16];
+        private int[] slots = new int[32];
+        private int size;
+
+        int find(char[] chars, int start, int end) {
+            int hash = hash(chars, start, end), mask = slots.length - 1;
+            for (int i = hash & mask; ; i = (i + 1) & mask) {
+                int slot = slots[i];
+                if (slot == 0) {
+                    return -1;
+                }
+                if (hashes[slot - 1] == hash && matches(names[slot - 1], chars, start, end)) {
+                    return slot - 1;
+                }
+            }
+        }
+
+        int add(String name) {
+            if (size == names.length) {
+                names = Arrays.copyOf(names, size * 2);
+                hashes = Arrays.copyOf(hashes, size * 2);
+                slots = new int[size * 4];
+                for (int id = 0; id < size; id++) {
+                    insert(id);
+                }
+            }
+            names[size] = name;
+            int hash = 0;
+            for (int i = 0; i < name.length(); i++) {
+                hash = 31 * hash + name.charAt(i);
+            }
+            hashes[size] = hash ^ (hash >>> 16);
+            insert(size);
+            return size++;
+        }
+
+        String name(int id) {
+            return names[id];
+        }
+
+        private void insert(int id) {
+            int mask = slots.length - 1, i = hashes[id] & mask;
+            while (slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = id + 1;
+        }
+
+        private static int hash(char[] chars, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + chars[i];
+            }
+            return hash ^ (hash >>> 16);
+        }
+
+        static boolean matches(String name, char[] chars, int start, int end) {
+            if (name.length() != end - start) {
+                return false;
+            }
+            for (int i = 0; i < name.length(); i++) {
+                if (name.charAt(i) != chars[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
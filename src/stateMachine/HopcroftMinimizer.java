@@ -0,0 +1,302 @@
+package stateMachine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hopcroft partition refinement over a {@link Dfa}, in the array-based form of
+ * Valmari and Lehtinen: states and transitions are both kept in refinable
+ * partitions and only the smaller half of every split is queued again.
+ * Missing transitions lead to a virtual sink that is never merged with a real
+ * state, so two states are equivalent exactly when the Moore refinement of
+ * {@link StateMachine.Graph#minimize} would put them in one group.
+ */
+final class HopcroftMinimizer {
+    private HopcroftMinimizer() {}
+
+    /**
+     * Returns the class of every state. Classes are numbered in the order in
+     * which {@link StateMachine.Graph#minimize} lists its groups, given the
+     * position of every state in its group ordering.
+     */
+    static int[] partition(Dfa dfa, int[] rank, int[] splitters, Budget budget) {
+        int[] blocks = new int[dfa.stateCount];
+        int blockCount = refine(dfa, blocks, splitters, budget);
+        return order(dfa, blocks, blockCount, rank);
+    }
+
+    static int refine(Dfa dfa, int[] blocks) {
+        return refine(dfa, blocks, null, Budget.UNLIMITED);
+    }
+
+    /** Estimated bytes of the partitions and indexes kept while refining. */
+    static long cost(Dfa dfa) {
+        long n = dfa.stateCount, m = n * dfa.symbolCount;
+        return (long)Integer.BYTES * (5 * n + 5 * m);
+    }
+
+    /**
+     * Writes the class of every state to {@code blocks} and returns the class
+     * count; the number of splitters processed goes to {@code splitters[0]}
+     * unless it is null. {@code budget} is checked before anything is
+     * allocated and then on the clock while splitting.
+     */
+    static int refine(Dfa dfa, int[] blocks, int[] splitters, Budget budget) {
+        long bytes = cost(dfa);
+        budget.checkSize(dfa.stateCount, bytes);
+        int n = dfa.stateCount, k = dfa.symbolCount, sink = n, m = n * k;
+        Partition states = new Partition(n + 1, 1);
+        for (int s = 0; s < n; s++) {
+            if (dfa.finals[s]) {
+                states.mark(s);
+            }
+        }
+        states.split();
+        states.mark(sink);
+        states.split();
+
+        Partition transitions = new Partition(m, k);
+        int[] heads = new int[m];
+        int[] inStart = new int[n + 2];
+        for (int t = 0; t < m; t++) {
+            int head = dfa.transitions[t];
+            heads[t] = head >= 0 ? head : sink;
+            inStart[heads[t] + 1]++;
+        }
+        for (int s = 0; s <= n; s++) {
+            inStart[s + 1] += inStart[s];
+        }
+        int[] incoming = new int[m];
+        int[] fill = Arrays.copyOf(inStart, n + 1);
+        for (int t = 0; t < m; t++) {
+            incoming[fill[heads[t]]++] = t;
+        }
+
+        int b = 1, c = 0;
+        while (c < transitions.count) {
+            if (c % Budget.TIME_CHECK_INTERVAL == 0) {
+                budget.checkTime(n, bytes);
+            }
+            for (int i = transitions.first[c]; i < transitions.end[c]; i++) {
+                states.mark(transitions.elems[i] / k);
+            }
+            states.split();
+            c++;
+            while (b < states.count) {
+                for (int i = states.first[b]; i < states.end[b]; i++) {
+                    int state = states.elems[i];
+                    for (int j = inStart[state]; j < inStart[state + 1]; j++) {
+                        transitions.mark(incoming[j]);
+                    }
+                }
+                transitions.split();
+                b++;
+            }
+        }
+
+        if (splitters != null) {
+            splitters[0] = c;
+        }
+        int sinkBlock = states.set[sink];
+        for (int s = 0; s < n; s++) {
+            int block = states.set[s];
+            blocks[s] = block < sinkBlock ? block : block - 1;
+        }
+        return states.count - 1;
+    }
+
+    /**
+     * Replays the Moore rounds on the quotient automaton to recover the group
+     * order: every round splits each group into subgroups ordered by their
+     * first member, finals group first.
+     */
+    private static int[] order(Dfa dfa, int[] blocks, int blockCount, int[] rank) {
+        int k = dfa.symbolCount;
+        int[] representative = new int[blockCount];
+        Arrays.fill(representative, -1);
+        for (int s = 0; s < dfa.stateCount; s++) {
+            int block = blocks[s], rep = representative[block];
+            if (rep == -1 || rank[s] < rank[rep]) {
+                representative[block] = s;
+            }
+        }
+        Integer[] sorted = new Integer[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, (x, y) -> Integer.compare(rank[representative[x]],
+                rank[representative[y]]));
+
+        List<int[]> groups = new ArrayList<>();
+        int[] group = new int[blockCount];
+        for (boolean isFinal : new boolean[] {true, false}) {
+            int size = 0;
+            int[] members = new int[blockCount];
+            for (int block : sorted) {
+                if (dfa.finals[representative[block]] == isFinal) {
+                    members[size++] = block;
+                }
+            }
+            if (size > 0) {
+                for (int i = 0; i < size; i++) {
+                    group[members[i]] = groups.size();
+                }
+                groups.add(Arrays.copyOf(members, size));
+            }
+        }
+
+        while (groups.size() < blockCount) {
+            List<int[]> newGroups = new ArrayList<>();
+            for (int[] members : groups) {
+                Map<Signature, List<Integer>> split = new HashMap<>();
+                List<List<Integer>> subgroups = new ArrayList<>();
+                for (int block : members) {
+                    int[] successors = new int[k];
+                    for (int a = 0; a < k; a++) {
+                        int target = dfa.next(representative[block], a);
+                        successors[a] = target >= 0 ? group[blocks[target]] : -1;
+                    }
+                    List<Integer> subgroup = split.computeIfAbsent(
+                            new Signature(successors), key -> new ArrayList<>());
+                    if (subgroup.isEmpty()) {
+                        subgroups.add(subgroup);
+                    }
+                    subgroup.add(block);
+                }
+                for (List<Integer> subgroup : subgroups) {
+                    int[] newMembers = new int[subgroup.size()];
+                    for (int i = 0; i < newMembers.length; i++) {
+                        newMembers[i] = subgroup.get(i);
+                    }
+                    newGroups.add(newMembers);
+                }
+            }
+            if (newGroups.size() == groups.size()) {
+                break;
+            }
+            groups = newGroups;
+            for (int g = 0; g < groups.size(); g++) {
+                for (int block : groups.get(g)) {
+                    group[block] = g;
+                }
+            }
+        }
+
+        int[] classes = new int[dfa.stateCount];
+        for (int s = 0; s < dfa.stateCount; s++) {
+            classes[s] = group[blocks[s]];
+        }
+        return classes;
+    }
+
+    private static final class Signature {
+        final int[] successors;
+        final int hash;
+
+        Signature(int[] successors) {
+            this.successors = successors;
+            this.hash = Arrays.hashCode(successors);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Signature &&
+                    Arrays.equals(successors, ((Signature)obj).successors);
+        }
+    }
+
+    /**
+     * Partition of {@code 0..size-1} into sets that can be split by marking
+     * elements; every set is a contiguous range of {@code elems}, marked
+     * elements first.
+     */
+    private static final class Partition {
+        final int[] elems;
+        final int[] location;
+        final int[] set;
+        int[] first;
+        int[] end;
+        int[] marked;
+        int[] touched;
+        int touchedCount;
+        int count;
+
+        /** Starts with {@code sets} equal consecutive ranges. */
+        Partition(int size, int sets) {
+            elems = new int[size];
+            location = new int[size];
+            set = new int[size];
+            int capacity = Math.max(sets, 16);
+            first = new int[capacity];
+            end = new int[capacity];
+            marked = new int[capacity];
+            touched = new int[capacity];
+            if (size == 0) {
+                return;
+            }
+            int perSet = size / sets;
+            for (int s = 0; s < sets; s++) {
+                first[s] = s * perSet;
+                end[s] = (s + 1) * perSet;
+            }
+            count = sets;
+            for (int i = 0; i < size; i++) {
+                int e = sets == 1 ? i : (i % perSet) * sets + i / perSet;
+                elems[i] = e;
+                location[e] = i;
+                set[e] = i / perSet;
+            }
+        }
+
+        void mark(int e) {
+            int s = set[e], i = location[e], j = first[s] + marked[s];
+            if (i < j) {
+                return;
+            }
+            elems[i] = elems[j];
+            location[elems[i]] = i;
+            elems[j] = e;
+            location[e] = j;
+            if (marked[s]++ == 0) {
+                touched[touchedCount++] = s;
+            }
+        }
+
+        void split() {
+            while (touchedCount > 0) {
+                int s = touched[--touchedCount], j = first[s] + marked[s];
+                if (j == end[s]) {
+                    marked[s] = 0;
+                    continue;
+                }
+                if (count == first.length) {
+                    int capacity = count * 2;
+                    first = Arrays.copyOf(first, capacity);
+                    end = Arrays.copyOf(end, capacity);
+                    marked = Arrays.copyOf(marked, capacity);
+                    touched = Arrays.copyOf(touched, capacity);
+                }
+                if (marked[s] <= end[s] - j) {
+                    first[count] = first[s];
+                    end[count] = first[s] = j;
+                } else {
+                    end[count] = end[s];
+                    first[count] = end[s] = j;
+                }
+                for (int i = first[count]; i < end[count]; i++) {
+                    set[elems[i]] = count;
+                }
+                marked[s] = 0;
+                marked[count++] = 0;
+            }
+        }
+    }
+}
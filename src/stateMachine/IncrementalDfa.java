@@ -0,0 +1,690 @@
+package stateMachine;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Minimal deterministic automaton that stays minimal under edits of single
+ * transitions and final flags. Equivalence is that of
+ * {@link StateMachine.Graph#minimize}: a missing transition only matches a
+ * missing transition. States that can no longer be reached from the initial
+ * state are dropped after every edit.
+ * <p>
+ * Every live state is kept in a register under its signature, its finality
+ * and its row of targets. An edit to state {@code p} can only change the
+ * languages of the ancestors of {@code p}; the other states stay pairwise
+ * inequivalent, so only an ancestor can turn equivalent to anything. For
+ * every ancestor the outside states it may equal are narrowed down, starting
+ * from the sources of its outside targets or from the register, until every
+ * candidate agrees with it on every symbol; ancestors matched that way are
+ * merged into their outside twin, and the remaining ones are partitioned
+ * among themselves with {@link HopcroftMinimizer}, outside targets standing
+ * for fixed distinct classes. Cycles among the ancestors are handled like
+ * any other edge and the work stays proportional to the ancestors and their
+ * edges. Only when every path from {@code p} stays among its ancestors,
+ * without reaching a state with no edges, while other states exist, is there
+ * nothing to look their twins up by, and then all live states are
+ * partitioned again.
+ * <p>
+ * State ids are those of the automaton it was built from and are not
+ * renumbered: ids {@code 0..stateCount()-1} are not all live, and
+ * {@link #states()} lists the ones that are. Merged states are forwarded to
+ * the state they were merged into, so ids handed out earlier stay usable;
+ * ids of dropped states are not. Not thread-safe; {@link #compile()} and
+ * {@link #toGraph()} take snapshots.
+ */
+final class IncrementalDfa {
+    private static final int[] NONE = new int[0];
+
+    private final String[] alphabet;
+    private final String lambda;
+    private final int symbolCount;
+    private final int stateCount;
+    private final int[] transitions;
+    private final boolean[] finals;
+    /** State every state was merged into, itself if live, -1 if dropped. */
+    private final int[] forward;
+    private final int initState;
+    private final Map<String, Integer> names = new HashMap<>();
+    private final Map<Signature, Integer> register = new HashMap<>();
+
+    /** Transitions {@code s * symbolCount + a} entering every state, and their slots. */
+    private final int[][] incoming;
+    private final int[] incomingCount;
+    private final int[] incomingSlot;
+
+    private final int[] mark;
+    /** Position of every marked state in the last search. */
+    private final int[] local;
+    private int stamp;
+    private int liveCount;
+
+    /**
+     * @param names  name of every state, or {@code null}; ambiguous names are
+     *               skipped by {@link #state(String)}
+     * @param lambda lambda symbol of the graphs {@link #toGraph()} builds
+     */
+    IncrementalDfa(String[] alphabet, Dfa dfa, String[] names, String lambda) {
+        this.alphabet = alphabet;
+        this.lambda = lambda;
+        this.symbolCount = dfa.symbolCount;
+        this.stateCount = dfa.stateCount;
+        this.transitions = dfa.transitions.clone();
+        this.finals = dfa.finals.clone();
+        this.forward = new int[stateCount];
+        this.initState = dfa.initState;
+        this.incoming = new int[stateCount][];
+        this.incomingCount = new int[stateCount];
+        this.incomingSlot = new int[stateCount * symbolCount];
+        this.mark = new int[stateCount];
+        this.local = new int[stateCount];
+        this.liveCount = stateCount;
+        for (int s = 0; s < stateCount; s++) {
+            forward[s] = s;
+            incoming[s] = new int[2];
+            if (names != null && names[s] != null) {
+                this.names.put(names[s], s);
+            }
+        }
+        for (int t = 0; t < transitions.length; t++) {
+            if (transitions[t] >= 0) {
+                link(t);
+            }
+        }
+        dropUnreachable();
+        minimizeAll();
+    }
+
+    int symbolCount() {
+        return symbolCount;
+    }
+
+    /** Live states, merged and dropped ones excluded; not a bound on their ids. */
+    int stateCount() {
+        return liveCount;
+    }
+
+    /** Ids of the live states in increasing order, the order {@link #toDfa()} numbers them in. */
+    int[] states() {
+        int[] live = new int[liveCount];
+        int count = 0;
+        for (int s = 0; s < stateCount; s++) {
+            if (forward[s] == s) {
+                live[count++] = s;
+            }
+        }
+        return live;
+    }
+
+    /** Initial state, or -1 if the automaton has none. */
+    int initState() {
+        return initState >= 0 ? find(initState) : -1;
+    }
+
+    /** State of the node named {@code name}, or -1 if there is none or it was dropped. */
+    int state(String name) {
+        Integer state = names.get(name);
+        return state != null ? resolve(state) : -1;
+    }
+
+    /** Target of {@code state} on {@code symbol}, or -1 if it has no such edge. */
+    int target(int state, String symbol) {
+        return transitions[find(state) * symbolCount + column(symbol)];
+    }
+
+    boolean isFinal(int state) {
+        return finals[find(state)];
+    }
+
+    /** Points the edge of {@code from} on {@code symbol} at {@code to}, adding it if needed. */
+    void setTransition(int from, String symbol, int to) {
+        edit(find(from), column(symbol), find(to));
+    }
+
+    void removeTransition(int from, String symbol) {
+        edit(find(from), column(symbol), -1);
+    }
+
+    void setFinal(int state, boolean isFinal) {
+        int s = find(state);
+        if (finals[s] == isFinal) {
+            return;
+        }
+        unregister(s);
+        finals[s] = isFinal;
+        reminimize(s);
+    }
+
+    private void edit(int from, int a, int to) {
+        int t = from * symbolCount + a, old = transitions[t];
+        if (old == to) {
+            return;
+        }
+        unregister(from);
+        if (old >= 0) {
+            unlink(t);
+        }
+        transitions[t] = to;
+        if (to >= 0) {
+            link(t);
+        }
+        if (old >= 0) {
+            prune(old);
+        }
+        if (forward[from] == from) {
+            reminimize(from);
+        }
+    }
+
+    /**
+     * Restores minimality after the language of {@code changed} changed;
+     * {@code changed} has already been taken out of the register.
+     */
+    private void reminimize(int changed) {
+        int[] ancestors = ancestors(changed, -1);
+        for (int s : ancestors) {
+            unregister(s);
+        }
+        int[][] twins = outsideTwins(ancestors);
+        if (twins == null) {
+            minimizeAll();
+            return;
+        }
+        for (int i = 0; i < ancestors.length; i++) {
+            if (twins[i].length > 0) {
+                merge(ancestors[i], twins[i][0]);
+            }
+        }
+        partitionLocally(ancestors);
+    }
+
+    /**
+     * {@code state} and every live state with a path to it, all marked with a
+     * new stamp and numbered in {@link #local}; {@code null} as soon as
+     * {@code stop} is among them.
+     */
+    private int[] ancestors(int state, int stop) {
+        stamp++;
+        int[] found = new int[16];
+        int count = 0;
+        mark[state] = stamp;
+        found[count++] = state;
+        for (int i = 0; i < count; i++) {
+            int s = found[i];
+            if (s == stop) {
+                return null;
+            }
+            local[s] = i;
+            for (int j = 0; j < incomingCount[s]; j++) {
+                int source = incoming[s][j] / symbolCount;
+                if (mark[source] != stamp) {
+                    mark[source] = stamp;
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, count * 2);
+                    }
+                    found[count++] = source;
+                }
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * For every one of {@code states}, the marked ancestors of an edit, the
+     * unmarked state it is equivalent to, as an array of at most one; or
+     * {@code null} if some of them could not be bounded. The unmarked states
+     * are pairwise inequivalent and registered, so an ancestor whose targets
+     * are all unmarked or missing has its twin in the register, and otherwise
+     * its twin is a source of the twins of its targets on the same symbol.
+     * Candidates are narrowed until none fails a symbol. When there is no
+     * unmarked state at all, there is no twin either.
+     */
+    private int[][] outsideTwins(int[] states) {
+        int count = states.length;
+        int[][] candidates = new int[count][];
+        boolean[] queued = new boolean[count];
+        ArrayDeque<Integer> queue = new ArrayDeque<>(count);
+        for (int i = 0; i < count; i++) {
+            queued[i] = true;
+            queue.add(i);
+        }
+        while (!queue.isEmpty()) {
+            int i = queue.poll(), s = states[i];
+            queued[i] = false;
+            int[] next = candidates[i] != null ? candidates[i] : bound(s, candidates);
+            if (next == null) {
+                continue;
+            }
+            next = narrow(s, next, candidates);
+            if (next == candidates[i]) {
+                continue;
+            }
+            candidates[i] = next;
+            for (int j = 0; j < incomingCount[s]; j++) {
+                int source = incoming[s][j] / symbolCount;
+                if (!queued[local[source]]) {
+                    queued[local[source]] = true;
+                    queue.add(local[source]);
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (candidates[i] == null) {
+                if (count < liveCount) {
+                    return null;
+                }
+                candidates[i] = NONE;
+            }
+        }
+        return candidates;
+    }
+
+    /** First candidates of marked {@code s}, sorted, or {@code null} if none of its targets bounds them. */
+    private int[] bound(int s, int[][] candidates) {
+        int best = -1;
+        long bestSize = Long.MAX_VALUE;
+        boolean inside = false;
+        for (int a = 0; a < symbolCount; a++) {
+            int target = transitions[s * symbolCount + a];
+            if (target < 0) {
+                continue;
+            }
+            long size;
+            if (mark[target] != stamp) {
+                size = incomingCount[target];
+            } else if (candidates[local[target]] != null) {
+                inside = true;
+                size = 0;
+                for (int o : candidates[local[target]]) {
+                    size += incomingCount[o];
+                }
+            } else {
+                inside = true;
+                continue;
+            }
+            if (size < bestSize) {
+                best = a;
+                bestSize = size;
+            }
+        }
+        if (!inside) {
+            Integer twin = register.get(new Signature(s));
+            return twin != null ? new int[] {twin} : NONE;
+        }
+        if (best == -1) {
+            return null;
+        }
+        int target = transitions[s * symbolCount + best];
+        int[] twins = mark[target] != stamp ? new int[] {target} : candidates[local[target]];
+        int[] found = new int[(int)bestSize];
+        int size = 0;
+        for (int o : twins) {
+            for (int j = 0; j < incomingCount[o]; j++) {
+                int t = incoming[o][j], source = t / symbolCount;
+                if (t % symbolCount == best && mark[source] != stamp) {
+                    found[size++] = source;
+                }
+            }
+        }
+        found = Arrays.copyOf(found, size);
+        Arrays.sort(found);
+        return found;
+    }
+
+    /** {@code found} without the candidates {@code s} differs from; the same array if none. */
+    private int[] narrow(int s, int[] found, int[][] candidates) {
+        int[] kept = new int[found.length];
+        int size = 0;
+        for (int o : found) {
+            if (agrees(s, o, candidates)) {
+                kept[size++] = o;
+            }
+        }
+        return size == found.length ? found : Arrays.copyOf(kept, size);
+    }
+
+    private boolean agrees(int s, int o, int[][] candidates) {
+        if (finals[s] != finals[o]) {
+            return false;
+        }
+        for (int a = 0; a < symbolCount; a++) {
+            int target = transitions[s * symbolCount + a], other = transitions[o * symbolCount + a];
+            if (target < 0 || mark[target] != stamp) {
+                if (target != other) {
+                    return false;
+                }
+            } else if (other < 0) {
+                return false;
+            } else {
+                int[] c = candidates[local[target]];
+                if (c != null && Arrays.binarySearch(c, other) < 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Partitions the marked {@code states} still live, none of which has an
+     * unmarked twin, and merges every class into its first state. Every
+     * unmarked target becomes a chain state on an extra symbol, so that it
+     * is distinct from every other target and from every marked state.
+     */
+    private void partitionLocally(int[] states) {
+        int count = 0;
+        int[] live = new int[states.length];
+        for (int s : states) {
+            if (forward[s] == s) {
+                local[s] = count;
+                live[count++] = s;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        Map<Integer, Integer> outside = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            for (int a = 0; a < symbolCount; a++) {
+                int target = transitions[live[i] * symbolCount + a];
+                if (target >= 0 && mark[target] != stamp) {
+                    outside.putIfAbsent(target, count + outside.size());
+                }
+            }
+        }
+        int k = symbolCount + 1, size = count + outside.size();
+        int[] table = new int[size * k];
+        Arrays.fill(table, -1);
+        boolean[] localFinals = new boolean[size];
+        for (int i = 0; i < count; i++) {
+            localFinals[i] = finals[live[i]];
+            for (int a = 0; a < symbolCount; a++) {
+                int target = transitions[live[i] * symbolCount + a];
+                if (target >= 0) {
+                    table[i * k + a] = mark[target] == stamp ? local[target] : outside.get(target);
+                }
+            }
+        }
+        for (int i = count; i < size; i++) {
+            table[i * k + symbolCount] = Math.min(i + 1, size - 1);
+        }
+        localFinals[size - 1] |= size > count;
+
+        int[] blocks = new int[size];
+        int blockCount = HopcroftMinimizer.refine(new Dfa(k, table, localFinals, -1, null), blocks);
+        int[] first = new int[blockCount];
+        Arrays.fill(first, -1);
+        for (int i = 0; i < count; i++) {
+            if (first[blocks[i]] == -1) {
+                first[blocks[i]] = live[i];
+            } else {
+                merge(live[i], first[blocks[i]]);
+            }
+        }
+        for (int s : first) {
+            if (s >= 0) {
+                register.put(new Signature(s), s);
+            }
+        }
+    }
+
+    /** Partitions all live states from scratch and merges every class into its first state. */
+    private void minimizeAll() {
+        register.clear();
+        int[] live = new int[liveCount], index = new int[stateCount];
+        int count = 0;
+        for (int s = 0; s < stateCount; s++) {
+            if (forward[s] == s) {
+                index[s] = count;
+                live[count++] = s;
+            }
+        }
+        int[] table = new int[count * symbolCount];
+        boolean[] liveFinals = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            liveFinals[i] = finals[live[i]];
+            for (int a = 0; a < symbolCount; a++) {
+                int target = transitions[live[i] * symbolCount + a];
+                table[i * symbolCount + a] = target >= 0 ? index[target] : -1;
+            }
+        }
+        int[] blocks = new int[count];
+        int blockCount = HopcroftMinimizer.refine(new Dfa(symbolCount, table, liveFinals, -1, null),
+                blocks);
+        int[] first = new int[blockCount];
+        Arrays.fill(first, -1);
+        for (int i = 0; i < count; i++) {
+            if (first[blocks[i]] == -1) {
+                first[blocks[i]] = live[i];
+            } else {
+                merge(live[i], first[blocks[i]]);
+            }
+        }
+        for (int s : first) {
+            register.put(new Signature(s), s);
+        }
+    }
+
+    /** Drops every state the initial state does not reach; nothing is dropped without one. */
+    private void dropUnreachable() {
+        if (initState < 0) {
+            return;
+        }
+        stamp++;
+        int[] found = new int[stateCount];
+        int count = 0;
+        mark[initState] = stamp;
+        found[count++] = initState;
+        for (int i = 0; i < count; i++) {
+            for (int a = 0; a < symbolCount; a++) {
+                int target = transitions[found[i] * symbolCount + a];
+                if (target >= 0 && mark[target] != stamp) {
+                    mark[target] = stamp;
+                    found[count++] = target;
+                }
+            }
+        }
+        for (int s = 0; s < stateCount; s++) {
+            if (mark[s] != stamp) {
+                drop(s);
+            }
+        }
+    }
+
+    /**
+     * Drops {@code suspect} if the initial state no longer reaches it, with
+     * all its ancestors, then the targets they leave behind in turn.
+     */
+    private void prune(int suspect) {
+        if (initState < 0) {
+            return;
+        }
+        ArrayDeque<Integer> suspects = new ArrayDeque<>();
+        suspects.add(suspect);
+        while (!suspects.isEmpty()) {
+            int s = suspects.poll();
+            if (forward[s] != s) {
+                continue;
+            }
+            int[] dead = ancestors(s, find(initState));
+            if (dead == null) {
+                continue;
+            }
+            for (int d : dead) {
+                unregister(d);
+            }
+            for (int d : dead) {
+                for (int a = 0; a < symbolCount; a++) {
+                    int target = transitions[d * symbolCount + a];
+                    if (target >= 0 && mark[target] != stamp) {
+                        suspects.add(target);
+                    }
+                }
+                drop(d);
+            }
+        }
+    }
+
+    /** Unlinks the edges of {@code state} and retires it for good. */
+    private void drop(int state) {
+        for (int a = 0; a < symbolCount; a++) {
+            int t = state * symbolCount + a;
+            if (transitions[t] >= 0) {
+                unlink(t);
+                transitions[t] = -1;
+            }
+        }
+        forward[state] = -1;
+        liveCount--;
+    }
+
+    /** Redirects every edge into {@code from} to {@code to} and retires {@code from}. */
+    private void merge(int from, int to) {
+        while (incomingCount[from] > 0) {
+            int t = incoming[from][incomingCount[from] - 1];
+            unlink(t);
+            transitions[t] = to;
+            link(t);
+        }
+        for (int a = 0; a < symbolCount; a++) {
+            int t = from * symbolCount + a;
+            if (transitions[t] >= 0) {
+                unlink(t);
+                transitions[t] = -1;
+            }
+        }
+        forward[from] = to;
+        liveCount--;
+    }
+
+    private void unregister(int state) {
+        Signature signature = new Signature(state);
+        Integer registered = register.get(signature);
+        if (registered != null && registered == state) {
+            register.remove(signature);
+        }
+    }
+
+    private void link(int t) {
+        int target = transitions[t];
+        if (incomingCount[target] == incoming[target].length) {
+            incoming[target] = Arrays.copyOf(incoming[target], incomingCount[target] * 2);
+        }
+        incomingSlot[t] = incomingCount[target];
+        incoming[target][incomingCount[target]++] = t;
+    }
+
+    private void unlink(int t) {
+        int target = transitions[t], slot = incomingSlot[t];
+        int last = incoming[target][--incomingCount[target]];
+        incoming[target][slot] = last;
+        incomingSlot[last] = slot;
+    }
+
+    private int find(int state) {
+        if (state < 0 || state >= stateCount) {
+            throw new IllegalArgumentException("No state " + state);
+        }
+        int root = resolve(state);
+        if (root < 0) {
+            throw new IllegalArgumentException("State " + state + " is unreachable and was dropped");
+        }
+        return root;
+    }
+
+    /** Live state {@code state} was merged into, or -1 if it was dropped. */
+    private int resolve(int state) {
+        int root = state;
+        while (forward[root] != root) {
+            root = forward[root];
+            if (root < 0) {
+                return -1;
+            }
+        }
+        while (forward[state] != root) {
+            int next = forward[state];
+            forward[state] = root;
+            state = next;
+        }
+        return root;
+    }
+
+    private int column(String symbol) {
+        int index = Arrays.binarySearch(alphabet, symbol);
+        if (index < 0) {
+            throw new IllegalArgumentException("No symbol " + symbol);
+        }
+        return index;
+    }
+
+    /** Snapshot of the live states, renumbered densely in id order. */
+    Dfa toDfa() {
+        int[] index = new int[stateCount];
+        int count = 0;
+        for (int s = 0; s < stateCount; s++) {
+            index[s] = forward[s] == s ? count++ : -1;
+        }
+        int[] table = new int[count * symbolCount];
+        boolean[] liveFinals = new boolean[count];
+        for (int s = 0; s < stateCount; s++) {
+            if (index[s] < 0) {
+                continue;
+            }
+            liveFinals[index[s]] = finals[s];
+            for (int a = 0; a < symbolCount; a++) {
+                int target = transitions[s * symbolCount + a];
+                table[index[s] * symbolCount + a] = target >= 0 ? index[target] : -1;
+            }
+        }
+        return new Dfa(symbolCount, table, liveFinals, initState >= 0 ? index[find(initState)] : -1,
+                null);
+    }
+
+    CompiledDfa compile() {
+        return new CompiledDfa(alphabet, toDfa());
+    }
+
+    /**
+     * Snapshot as a deterministic graph, for printing, export or comparison;
+     * the live states are named {@code N1, N2, ...} in the order of
+     * {@link #states()}.
+     */
+    StateMachine.Graph toGraph() {
+        return StateMachine.Graph.fromDfa(alphabet, toDfa(), "N", lambda);
+    }
+
+    private final class Signature {
+        final int state;
+        final int hash;
+
+        Signature(int state) {
+            this.state = state;
+            int hash = finals[state] ? 1 : 0;
+            for (int a = 0; a < symbolCount; a++) {
+                hash = 31 * hash + transitions[state * symbolCount + a];
+            }
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            int other = ((Signature)obj).state;
+            if (finals[state] != finals[other]) {
+                return false;
+            }
+            for (int a = 0; a < symbolCount; a++) {
+                if (transitions[state * symbolCount + a] != transitions[other * symbolCount + a]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
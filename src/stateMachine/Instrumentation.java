@@ -0,0 +1,21 @@
+package stateMachine;
+
+/**
+ * Process-wide {@link PhaseListener}, {@link PhaseListener#NONE} until one is
+ * installed. Phases read it once when they finish, so the listener costs
+ * nothing while automata are built or matched; per-input figures come from
+ * wrapping a matcher in an {@link InstrumentedMatcher}.
+ */
+final class Instrumentation {
+    private static volatile PhaseListener listener = PhaseListener.NONE;
+
+    private Instrumentation() {}
+
+    static PhaseListener listener() {
+        return listener;
+    }
+
+    static void setListener(PhaseListener listener) {
+        Instrumentation.listener = listener != null ? listener : PhaseListener.NONE;
+    }
+}
@@ -0,0 +1,99 @@
+package stateMachine;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Matcher that times every call of the one it wraps. Latencies go to a
+ * histogram of power-of-two nanosecond buckets; counts are kept in
+ * {@link LongAdder}s, so concurrent callers do not contend. Thread-safe if the
+ * wrapped matcher is.
+ */
+final class InstrumentedMatcher implements Matcher {
+    private static final int BUCKETS = 64;
+
+    private final Matcher matcher;
+    private final LongAdder[] histogram = new LongAdder[BUCKETS];
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder matched = new LongAdder();
+    private final LongAdder symbols = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+
+    InstrumentedMatcher(Matcher matcher) {
+        this.matcher = matcher;
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public boolean matches(CharSequence input) {
+        long start = System.nanoTime();
+        boolean result = matcher.matches(input);
+        record(input.length(), result, System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public boolean matches(byte[] input, int offset, int length) {
+        long start = System.nanoTime();
+        boolean result = matcher.matches(input, offset, length);
+        record(length, result, System.nanoTime() - start);
+        return result;
+    }
+
+    private void record(int length, boolean result, long elapsed) {
+        calls.increment();
+        if (result) {
+            matched.increment();
+        }
+        symbols.add(length);
+        nanos.add(elapsed);
+        histogram[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(elapsed, 0)))]
+                .increment();
+    }
+
+    long calls() {
+        return calls.sum();
+    }
+
+    long matched() {
+        return matched.sum();
+    }
+
+    long symbols() {
+        return symbols.sum();
+    }
+
+    /** Symbols matched per second of time spent inside the wrapped matcher. */
+    double symbolsPerSecond() {
+        long total = nanos.sum();
+        return total > 0 ? symbols.sum() * 1e9 / total : 0;
+    }
+
+    /** Calls whose latency was below {@code 2^bucket} nanoseconds and at least half that. */
+    long bucket(int bucket) {
+        return histogram[bucket].sum();
+    }
+
+    /** Upper bound, in nanoseconds, of the latency of the given fraction of calls. */
+    long percentile(double fraction) {
+        long total = calls.sum(), seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += histogram[i].sum();
+            if (seen > 0 && seen >= fraction * total) {
+                return i < BUCKETS - 1 ? 1L << i : Long.MAX_VALUE;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    void reset() {
+        for (LongAdder bucket : histogram) {
+            bucket.reset();
+        }
+        calls.reset();
+        matched.reset();
+        symbols.reset();
+        nanos.reset();
+    }
+}
@@ -0,0 +1,268 @@
+package stateMachine;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Subset construction done lazily during matching: a DFA state, the
+ * lambda-closed set of NFA states, is only built the first time a transition
+ * leads to it. Built states are cached up to an approximate memory bound; once
+ * the bound is hit the whole cache is dropped and rebuilt from the current
+ * state. If that happens before the input has made enough progress per cached
+ * state, the cache is thrashing and the rest of the input is matched by
+ * simulating the NFA directly. Accepts the same language as the determinized
+ * graph. Not thread-safe.
+ */
+final class LazyDfa implements Matcher {
+    private static final int UNKNOWN = -2;
+    private static final int FALLBACK = -3;
+    /** Approximate bytes per cached state besides its row and set. */
+    private static final int STATE_OVERHEAD = 96;
+    /** Input symbols needed per cached state between flushes to keep the cache. */
+    private static final int MIN_PROGRESS_PER_STATE = 10;
+
+    private final String[] alphabet;
+    private final Nfa nfa;
+    private final int symbolCount;
+    private final int[] initSet;
+    private final long maxBytes;
+    private final int[] charColumns;
+    private final int[] byteColumns;
+
+    private final Map<Determinizer.Subset, Integer> ids = new HashMap<>();
+    private int[][] sets = new int[16][];
+    private int[] transitions;
+    private boolean[] finals = new boolean[16];
+    private int size;
+    private long bytes;
+    private int initState = UNKNOWN;
+    private long progress;
+    private int flushes;
+    private int fallbacks;
+
+    private final int[] mark;
+    private int stamp;
+    private int[] buffer = new int[16];
+    private int[] pending;
+
+    /**
+     * @param initState NFA state matching starts from, or -1 if the graph has no
+     *                  node with the initial name; nothing is accepted then
+     */
+    LazyDfa(String[] alphabet, Nfa nfa, int initState, long maxBytes) {
+        this.alphabet = alphabet;
+        this.nfa = nfa;
+        this.symbolCount = nfa.symbolCount;
+        this.initSet = initState >= 0 ? nfa.closure(initState) : new int[0];
+        this.maxBytes = maxBytes;
+        this.charColumns = CompiledDfa.charColumns(alphabet);
+        this.byteColumns = CompiledDfa.byteColumns(alphabet);
+        this.transitions = new int[16 * symbolCount];
+        this.mark = new int[nfa.stateCount];
+    }
+
+    /** DFA states currently cached. */
+    int cachedStates() {
+        return size;
+    }
+
+    /** Times the cache was dropped for hitting its memory bound. */
+    int flushes() {
+        return flushes;
+    }
+
+    /** Inputs finished by NFA simulation because the cache was thrashing. */
+    int fallbacks() {
+        return fallbacks;
+    }
+
+    /** Column of {@code symbol}, or -1 if it is not in the alphabet. */
+    int symbolIndex(String symbol) {
+        int index = Arrays.binarySearch(alphabet, symbol);
+        return index >= 0 ? index : -1;
+    }
+
+    @Override
+    public boolean matches(CharSequence input) {
+        int[] columns = charColumns;
+        int state = start(), length = input.length();
+        for (int i = 0; i < length && state >= 0; i++) {
+            char c = input.charAt(i);
+            if (c >= columns.length || columns[c] < 0) {
+                progress += i;
+                return false;
+            }
+            int next = transitions[state * symbolCount + columns[c]];
+            if (next == UNKNOWN) {
+                next = build(state, columns[c], i);
+                if (next == FALLBACK) {
+                    int[] set = pending;
+                    for (int j = i + 1; j < length && set.length > 0; j++) {
+                        c = input.charAt(j);
+                        set = c < columns.length && columns[c] >= 0 ?
+                                successor(set, columns[c]) : new int[0];
+                    }
+                    progress += length;
+                    return isFinal(set);
+                }
+            }
+            state = next;
+        }
+        progress += length;
+        return state >= 0 && finals[state];
+    }
+
+    @Override
+    public boolean matches(byte[] input, int offset, int length) {
+        int[] columns = byteColumns;
+        int state = start();
+        for (int i = 0; i < length && state >= 0; i++) {
+            int column = columns[input[offset + i] & 0xFF];
+            if (column < 0) {
+                progress += i;
+                return false;
+            }
+            int next = transitions[state * symbolCount + column];
+            if (next == UNKNOWN) {
+                next = build(state, column, i);
+                if (next == FALLBACK) {
+                    int[] set = pending;
+                    for (int j = i + 1; j < length && set.length > 0; j++) {
+                        column = columns[input[offset + j] & 0xFF];
+                        set = column >= 0 ? successor(set, column) : new int[0];
+                    }
+                    progress += length;
+                    return isFinal(set);
+                }
+            }
+            state = next;
+        }
+        progress += length;
+        return state >= 0 && finals[state];
+    }
+
+    /** Runs a sequence of column indexes, as returned by {@link #symbolIndex}. */
+    boolean matches(int[] symbols) {
+        int state = start();
+        for (int i = 0; i < symbols.length && state >= 0; i++) {
+            int next = transitions[state * symbolCount + symbols[i]];
+            if (next == UNKNOWN) {
+                next = build(state, symbols[i], i);
+                if (next == FALLBACK) {
+                    int[] set = pending;
+                    for (int j = i + 1; j < symbols.length && set.length > 0; j++) {
+                        set = successor(set, symbols[j]);
+                    }
+                    progress += symbols.length;
+                    return isFinal(set);
+                }
+            }
+            state = next;
+        }
+        progress += symbols.length;
+        return state >= 0 && finals[state];
+    }
+
+    private int start() {
+        if (initState == UNKNOWN) {
+            initState = initSet.length > 0 ? add(initSet) : -1;
+        }
+        return initState;
+    }
+
+    /**
+     * Builds the transition of {@code state} on {@code symbol}, after reading
+     * {@code position} symbols of the current input. Returns the target, -1 if
+     * there is none, or {@link #FALLBACK} with the target set in {@link #pending}
+     * if the cache is thrashing.
+     */
+    private int build(int state, int symbol, int position) {
+        int[] set = successor(sets[state], symbol);
+        if (set.length == 0) {
+            transitions[state * symbolCount + symbol] = -1;
+            return -1;
+        }
+        Integer id = ids.get(new Determinizer.Subset(set));
+        if (id != null) {
+            transitions[state * symbolCount + symbol] = id;
+            return id;
+        }
+        if (bytes + cost(set) > maxBytes && size > 0) {
+            boolean thrashing = progress + position < (long)MIN_PROGRESS_PER_STATE * size;
+            flush();
+            progress = -position;
+            if (thrashing) {
+                fallbacks++;
+                pending = set;
+                return FALLBACK;
+            }
+            return add(set);
+        }
+        int target = add(set);
+        transitions[state * symbolCount + symbol] = target;
+        return target;
+    }
+
+    private int add(int[] set) {
+        if (size == sets.length) {
+            int capacity = size * 2;
+            sets = Arrays.copyOf(sets, capacity);
+            finals = Arrays.copyOf(finals, capacity);
+            transitions = Arrays.copyOf(transitions, capacity * symbolCount);
+        }
+        sets[size] = set;
+        finals[size] = isFinal(set);
+        Arrays.fill(transitions, size * symbolCount, (size + 1) * symbolCount, UNKNOWN);
+        ids.put(new Determinizer.Subset(set), size);
+        bytes += cost(set);
+        return size++;
+    }
+
+    private void flush() {
+        flushes++;
+        ids.clear();
+        Arrays.fill(sets, 0, size, null);
+        size = 0;
+        bytes = 0;
+        initState = UNKNOWN;
+    }
+
+    private long cost(int[] set) {
+        return STATE_OVERHEAD + (long)Integer.BYTES * (symbolCount + set.length);
+    }
+
+    /** Sorted lambda-closed set reached from the closed {@code set} on {@code symbol}. */
+    private int[] successor(int[] set, int symbol) {
+        stamp++;
+        int count = 0;
+        for (int from : set) {
+            for (int e = nfa.edgeStart[from]; e < nfa.edgeStart[from + 1]; e++) {
+                if (nfa.edgeSymbol[e] != symbol) {
+                    continue;
+                }
+                for (int to : nfa.closure(nfa.edgeTarget[e])) {
+                    if (mark[to] != stamp) {
+                        mark[to] = stamp;
+                        if (count == buffer.length) {
+                            buffer = Arrays.copyOf(buffer, count * 2);
+                        }
+                        buffer[count++] = to;
+                    }
+                }
+            }
+        }
+        int[] result = Arrays.copyOf(buffer, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private boolean isFinal(int[] set) {
+        for (int state : set) {
+            if (nfa.finals[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,95 @@
+package stateMachine;
+
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Automaton matched straight off a read-only mapping of an
+ * {@link AutomatonFile}. Only the alphabet is decoded on load; transitions
+ * and final states are read from the mapped region on every step.
+ */
+final class MappedDfa implements Matcher {
+    private final MappedByteBuffer buffer;
+    private final IntBuffer table;
+    private final LongBuffer finals;
+    private final String[] alphabet;
+    private final int stateCount;
+    private final int symbolCount;
+    private final int initState;
+    private final int[] charColumns;
+    private final int[] byteColumns;
+
+    MappedDfa(MappedByteBuffer buffer, String[] alphabet, int stateCount, int initState,
+              int tableOffset, int finalsOffset) {
+        this.buffer = buffer;
+        this.table = buffer.slice(tableOffset, finalsOffset - tableOffset)
+                .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        this.finals = buffer.slice(finalsOffset, buffer.capacity() - finalsOffset)
+                .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        this.alphabet = alphabet;
+        this.stateCount = stateCount;
+        this.symbolCount = alphabet.length;
+        this.initState = initState;
+        this.charColumns = CompiledDfa.charColumns(alphabet);
+        this.byteColumns = CompiledDfa.byteColumns(alphabet);
+    }
+
+    int stateCount() {
+        return stateCount;
+    }
+
+    int symbolCount() {
+        return symbolCount;
+    }
+
+    int initState() {
+        return initState;
+    }
+
+    String symbol(int index) {
+        return alphabet[index];
+    }
+
+    int step(int state, int symbol) {
+        return table.get(state * symbolCount + symbol);
+    }
+
+    boolean isFinal(int state) {
+        return (finals.get(state >>> 6) & (1L << state)) != 0;
+    }
+
+    /** Pages the whole automaton in ahead of the first match. */
+    void load() {
+        buffer.load();
+    }
+
+    @Override
+    public boolean matches(CharSequence input) {
+        int[] columns = charColumns;
+        int state = initState;
+        for (int i = 0, length = input.length(); i < length && state >= 0; i++) {
+            char c = input.charAt(i);
+            if (c >= columns.length || columns[c] < 0) {
+                return false;
+            }
+            state = table.get(state * symbolCount + columns[c]);
+        }
+        return state >= 0 && isFinal(state);
+    }
+
+    @Override
+    public boolean matches(byte[] input, int offset, int length) {
+        int[] columns = byteColumns;
+        int state = initState;
+        for (int i = offset, end = offset + length; i < end && state >= 0; i++) {
+            int column = columns[input[i] & 0xFF];
+            if (column < 0) {
+                return false;
+            }
+            state = table.get(state * symbolCount + column);
+        }
+        return state >= 0 && isFinal(state);
+    }
+}
@@ -0,0 +1,14 @@
+package stateMachine;
+
+/**
+ * Runs whole inputs against a deterministic automaton.
+ */
+interface Matcher {
+    boolean matches(CharSequence input);
+
+    boolean matches(byte[] input, int offset, int length);
+
+    default boolean matches(byte[] input) {
+        return matches(input, 0, input.length);
+    }
+}
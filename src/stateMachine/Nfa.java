@@ -0,0 +1,82 @@
+package stateMachine;
+
+import java.util.Arrays;
+
+/**
+ * Integer view of a {@link StateMachine.Graph}: states are indexes into the
+ * node list, symbols are indexes into the sorted alphabet and lambda edges are
+ * kept apart. Lambda-closures are computed once, on construction.
+ */
+final class Nfa {
+    final int stateCount;
+    final int symbolCount;
+    final boolean[] finals;
+    final int[] edgeStart;
+    final int[] edgeSymbol;
+    final int[] edgeTarget;
+    final int[] lambdaStart;
+    final int[] lambdaTarget;
+    private final int[][] closures;
+    private final boolean[] closureFinals;
+
+    /**
+     * Edges of state {@code i} are {@code [edgeStart[i], edgeStart[i + 1])},
+     * lambda edges likewise through {@code lambdaStart}.
+     */
+    Nfa(boolean[] finals, int symbolCount, int[] edgeStart, int[] edgeSymbol,
+        int[] edgeTarget, int[] lambdaStart, int[] lambdaTarget) {
+        this.stateCount = finals.length;
+        this.symbolCount = symbolCount;
+        this.finals = finals;
+        this.edgeStart = edgeStart;
+        this.edgeSymbol = edgeSymbol;
+        this.edgeTarget = edgeTarget;
+        this.lambdaStart = lambdaStart;
+        this.lambdaTarget = lambdaTarget;
+        this.closures = new int[stateCount][];
+        this.closureFinals = new boolean[stateCount];
+        computeClosures();
+    }
+
+    /** Sorted states reachable from {@code state} by lambda edges, itself included. */
+    int[] closure(int state) {
+        return closures[state];
+    }
+
+    boolean isClosureFinal(int state) {
+        return closureFinals[state];
+    }
+
+    private void computeClosures() {
+        int[] mark = new int[stateCount];
+        int[] stack = new int[Math.max(stateCount, 1)];
+        int[] buffer = new int[Math.max(stateCount, 1)];
+        for (int s = 0; s < stateCount; s++) {
+            if (lambdaStart[s] == lambdaStart[s + 1]) {
+                closures[s] = new int[] {s};
+                closureFinals[s] = finals[s];
+                continue;
+            }
+            int stamp = s + 1, size = 0, top = 0;
+            boolean isFinal = false;
+            mark[s] = stamp;
+            stack[top++] = s;
+            while (top > 0) {
+                int cur = stack[--top];
+                buffer[size++] = cur;
+                isFinal = isFinal || finals[cur];
+                for (int e = lambdaStart[cur]; e < lambdaStart[cur + 1]; e++) {
+                    int next = lambdaTarget[e];
+                    if (mark[next] != stamp) {
+                        mark[next] = stamp;
+                        stack[top++] = next;
+                    }
+                }
+            }
+            int[] closure = Arrays.copyOf(buffer, size);
+            Arrays.sort(closure);
+            closures[s] = closure;
+            closureFinals[s] = isFinal;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package stateMachine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Subset construction spread over a {@link ForkJoinPool}. The target subsets
+ * of all NFA states, and then of each frontier of newly reached subsets, are
+ * computed concurrently and interned in a concurrent table without ids. A
+ * sequential pass then replays the numbering of {@link Determinizer} over the
+ * finished transitions, so both produce the same {@link Dfa}. Collecting
+ * the next frontier between levels is sequential. Every leaf task borrows
+ * scratch arrays from a queue owned by the construction, so at most one set
+ * per worker is allocated and nothing is left on the pool's threads. A
+ * {@link Budget} is checked on every new subset and at the start of every
+ * task; the first worker to exceed it fails the whole construction.
+ */
+final class ParallelDeterminizer {
+    private static final int THRESHOLD = 64;
+
+    private final Nfa nfa;
+    private final Budget budget;
+    private final int symbolCount;
+    private final ConcurrentHashMap<Determinizer.Subset, State> table = new ConcurrentHashMap<>();
+    private final State[] singletons;
+    private final ConcurrentLinkedQueue<Scratch> spare = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+
+    private ParallelDeterminizer(Nfa nfa, Budget budget) {
+        this.nfa = nfa;
+        this.budget = budget;
+        this.symbolCount = nfa.symbolCount;
+        this.singletons = new State[nfa.stateCount];
+    }
+
+    static Dfa determinize(Nfa nfa, int initState, boolean deleteUnused, ForkJoinPool pool) {
+        return determinize(nfa, initState, deleteUnused, pool, Budget.UNLIMITED);
+    }
+
+    static Dfa determinize(Nfa nfa, int initState, boolean deleteUnused, ForkJoinPool pool,
+                           Budget budget) {
+        ParallelDeterminizer determinizer = new ParallelDeterminizer(nfa, budget);
+        pool.invoke(new Expand(determinizer, 0, nfa.stateCount, determinizer::buildSingleton));
+        State init = initState >= 0 ? determinizer.singletons[initState] :
+                determinizer.state(new int[0]);
+
+        List<State> frontier = new ArrayList<>();
+        init.reached = true;
+        frontier.add(init);
+        while (!frontier.isEmpty()) {
+            List<State> current = frontier;
+            pool.invoke(new Expand(determinizer, 0, current.size(),
+                    (i, s) -> determinizer.buildSubset(current.get(i), s)));
+            frontier = new ArrayList<>();
+            for (State state : current) {
+                if (state.targets == null) {
+                    continue;
+                }
+                for (State target : state.targets) {
+                    if (target != null && !target.reached) {
+                        target.reached = true;
+                        frontier.add(target);
+                    }
+                }
+            }
+        }
+        return determinizer.number(init, deleteUnused);
+    }
+
+    private void buildSingleton(int state, Scratch s) {
+        State singleton = state(new int[] {state});
+        singletons[state] = singleton;
+        singleton.isFinal = nfa.isClosureFinal(state);
+
+        State[] targets = new State[symbolCount];
+        int pairs = 0;
+        for (int from : nfa.closure(state)) {
+            for (int e = nfa.edgeStart[from]; e < nfa.edgeStart[from + 1]; e++) {
+                for (int to : nfa.closure(nfa.edgeTarget[e])) {
+                    pairs = s.addPair(nfa.edgeSymbol[e], to, pairs);
+                }
+            }
+        }
+        if (pairs > 0) {
+            int[] start = s.sortPairs(pairs, symbolCount);
+            for (int a = 0; a < symbolCount; a++) {
+                if (start[a] == start[a + 1]) {
+                    continue;
+                }
+                s.stamp++;
+                int count = 0;
+                for (int p = start[a]; p < start[a + 1]; p++) {
+                    count = s.collect(s.sortedStates[p], count);
+                }
+                targets[a] = state(s.members(count));
+            }
+        }
+        singleton.targets = targets;
+    }
+
+    private void buildSubset(State subset, Scratch s) {
+        int[] members = subset.members();
+        if (members.length <= 1) {
+            return;
+        }
+        boolean isFinal = false;
+        for (int member : members) {
+            isFinal = isFinal || singletons[member].isFinal;
+        }
+        State[] targets = new State[symbolCount];
+        for (int a = 0; a < symbolCount; a++) {
+            s.stamp++;
+            int count = 0;
+            for (int member : members) {
+                State target = singletons[member].targets[a];
+                if (target != null) {
+                    for (int state : target.members()) {
+                        count = s.collect(state, count);
+                    }
+                }
+            }
+            if (count > 0) {
+                targets[a] = state(s.members(count));
+            }
+        }
+        subset.isFinal = isFinal;
+        subset.targets = targets;
+    }
+
+    private State state(int[] members) {
+        return table.computeIfAbsent(new Determinizer.Subset(members), this::create);
+    }
+
+    private State create(Determinizer.Subset subset) {
+        budget.checkSize(created.incrementAndGet(),
+                bytes.addAndGet(Determinizer.cost(symbolCount, subset.members.length)));
+        return new State(subset);
+    }
+
+    private void checkTime() {
+        budget.checkTime(created.get(), bytes.get());
+    }
+
+    /** Numbers the states in the order {@link Determinizer} interns them. */
+    private Dfa number(State init, boolean deleteUnused) {
+        List<State> states = new ArrayList<>(table.size());
+        for (State singleton : singletons) {
+            assign(singleton, states);
+            for (State target : singleton.targets) {
+                assign(target, states);
+            }
+        }
+        assign(init, states);
+
+        boolean[] used = new boolean[table.size()];
+        State[] stack = new State[16];
+        int[] stackSymbols = new int[16];
+        int top = 0;
+        used[init.id] = true;
+        expand(init, states);
+        stack[top] = init;
+        stackSymbols[top++] = 0;
+        while (top > 0) {
+            State state = stack[top - 1], next = null;
+            int a = stackSymbols[top - 1];
+            while (a < symbolCount && next == null && state.targets != null) {
+                State target = state.targets[a++];
+                if (target != null && !used[target.id]) {
+                    next = target;
+                }
+            }
+            stackSymbols[top - 1] = a;
+            if (next == null) {
+                top--;
+                continue;
+            }
+            used[next.id] = true;
+            expand(next, states);
+            if (top == stack.length) {
+                stack = Arrays.copyOf(stack, top * 2);
+                stackSymbols = Arrays.copyOf(stackSymbols, top * 2);
+            }
+            stack[top] = next;
+            stackSymbols[top++] = 0;
+        }
+
+        int size = states.size();
+        int[] transitions = new int[size * symbolCount];
+        boolean[] finals = new boolean[size];
+        int[][] subsets = new int[size][];
+        Arrays.fill(transitions, -1);
+        for (State state : states) {
+            subsets[state.id] = state.members();
+            finals[state.id] = state.isFinal;
+            if (state.targets == null) {
+                continue;
+            }
+            for (int a = 0; a < symbolCount; a++) {
+                State target = state.targets[a];
+                if (target != null) {
+                    transitions[state.id * symbolCount + a] = target.id;
+                }
+            }
+        }
+        return Determinizer.result(symbolCount, size, transitions, finals, used, subsets,
+                init.id, deleteUnused);
+    }
+
+    private void expand(State state, List<State> states) {
+        if (state.members().length > 1) {
+            for (State target : state.targets) {
+                assign(target, states);
+            }
+        }
+    }
+
+    private static void assign(State state, List<State> states) {
+        if (state != null && state.id < 0) {
+            state.id = states.size();
+            states.add(state);
+        }
+    }
+
+    private static final class State {
+        final Determinizer.Subset subset;
+        State[] targets;
+        boolean isFinal;
+        boolean reached;
+        int id = -1;
+
+        State(Determinizer.Subset subset) {
+            this.subset = subset;
+        }
+
+        int[] members() {
+            return subset.members;
+        }
+    }
+
+    private static final class Scratch {
+        final int[] mark;
+        int stamp;
+        int[] buffer = new int[16];
+        int[] pairSymbols = new int[16];
+        int[] pairStates = new int[16];
+        int[] sortedStates = new int[16];
+
+        Scratch(int stateCount) {
+            this.mark = new int[stateCount];
+        }
+
+        int collect(int state, int count) {
+            if (mark[state] != stamp) {
+                mark[state] = stamp;
+                if (count == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, count * 2);
+                }
+                buffer[count++] = state;
+            }
+            return count;
+        }
+
+        int addPair(int symbol, int state, int pairs) {
+            if (pairs == pairStates.length) {
+                pairSymbols = Arrays.copyOf(pairSymbols, pairs * 2);
+                pairStates = Arrays.copyOf(pairStates, pairs * 2);
+            }
+            pairSymbols[pairs] = symbol;
+            pairStates[pairs] = state;
+            return pairs + 1;
+        }
+
+        /** Buckets the pairs by symbol into {@code sortedStates}, returning bucket starts. */
+        int[] sortPairs(int pairs, int symbolCount) {
+            int[] start = new int[symbolCount + 1];
+            for (int p = 0; p < pairs; p++) {
+                start[pairSymbols[p] + 1]++;
+            }
+            for (int a = 0; a < symbolCount; a++) {
+                start[a + 1] += start[a];
+            }
+            if (sortedStates.length < pairs) {
+                sortedStates = new int[pairStates.length];
+            }
+            int[] fill = Arrays.copyOf(start, symbolCount);
+            for (int p = 0; p < pairs; p++) {
+                sortedStates[fill[pairSymbols[p]]++] = pairStates[p];
+            }
+            return start;
+        }
+
+        int[] members(int count) {
+            int[] members = Arrays.copyOf(buffer, count);
+            Arrays.sort(members);
+            return members;
+        }
+    }
+
+    private interface Task {
+        void run(int index, Scratch s);
+    }
+
+    private static final class Expand extends RecursiveAction {
+        private final ParallelDeterminizer determinizer;
+        private final int from;
+        private final int to;
+        private final Task task;
+
+        Expand(ParallelDeterminizer determinizer, int from, int to, Task task) {
+            this.determinizer = determinizer;
+            this.from = from;
+            this.to = to;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            determinizer.checkTime();
+            if (to - from <= THRESHOLD) {
+                Scratch s = determinizer.spare.poll();
+                if (s == null) {
+                    s = new Scratch(determinizer.nfa.stateCount);
+                }
+                try {
+                    for (int i = from; i < to; i++) {
+                        task.run(i, s);
+                    }
+                } finally {
+                    determinizer.spare.add(s);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Expand(determinizer, from, mid, task),
+                    new Expand(determinizer, mid, to, task));
+        }
+    }
+}
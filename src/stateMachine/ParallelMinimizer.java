@@ -0,0 +1,298 @@
+package stateMachine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Moore refinement with every round spread over a {@link ForkJoinPool}. The
+ * signature of a state, its class and the classes of its targets with -1 for
+ * a missing edge, is hashed into a concurrent table whose slots keep the
+ * lowest ranked state of the signature; states that only share a hash with
+ * it are told apart sequentially. The new classes are then sorted by old
+ * class and lowest rank, which is the order {@link StateMachine.Graph#minimize}
+ * lists its groups in after the same round, so the classes come out numbered
+ * as its groups are and no sequential replay is needed.
+ */
+final class ParallelMinimizer {
+    private static final int THRESHOLD = 4096;
+
+    private final int n;
+    private final int k;
+    private final int[] transitions;
+    private final boolean[] finals;
+    private final int[] rank;
+    private final int[] byRank;
+    private final ForkJoinPool pool;
+    private int[] classes;
+    /** Representative of every state, then its new class. */
+    private int[] representatives;
+    private final int[] ids;
+    private final int[] slots;
+    private final boolean[] isRepresentative;
+    private final AtomicLongArray keys;
+    private final AtomicIntegerArray lowest;
+    private final int mask;
+    private final int[] chunkStarts;
+
+    private ParallelMinimizer(Dfa dfa, int[] rank, ForkJoinPool pool) {
+        this.n = dfa.stateCount;
+        this.k = dfa.symbolCount;
+        this.transitions = dfa.transitions;
+        this.finals = dfa.finals;
+        this.rank = rank;
+        this.pool = pool;
+        this.byRank = new int[n];
+        for (int s = 0; s < n; s++) {
+            byRank[rank[s]] = s;
+        }
+        this.classes = new int[n];
+        this.representatives = new int[n];
+        this.ids = new int[n];
+        this.slots = new int[n];
+        this.isRepresentative = new boolean[n];
+        int capacity = tableSize(n);
+        this.keys = new AtomicLongArray(capacity);
+        this.lowest = new AtomicIntegerArray(capacity);
+        this.mask = capacity - 1;
+        this.chunkStarts = new int[(n + THRESHOLD - 1) / THRESHOLD + 1];
+    }
+
+    private static int tableSize(int states) {
+        return Integer.highestOneBit(Math.max(states, 8) * 2 - 1) << 1;
+    }
+
+    /** Estimated bytes of the arrays and the table used while refining. */
+    static long cost(Dfa dfa) {
+        long n = dfa.stateCount;
+        return 7 * Integer.BYTES * n + (long)tableSize(dfa.stateCount) * (Long.BYTES + Integer.BYTES);
+    }
+
+    /**
+     * Returns the class of every state, numbered as {@link HopcroftMinimizer#partition}
+     * numbers them given the same {@code rank}. The rounds run go to
+     * {@code rounds[0]} unless it is null.
+     */
+    static int[] partition(Dfa dfa, int[] rank, ForkJoinPool pool, Budget budget, int[] rounds) {
+        long bytes = cost(dfa);
+        budget.checkSize(dfa.stateCount, bytes);
+        ParallelMinimizer minimizer = new ParallelMinimizer(dfa, rank, pool);
+        int count = minimizer.initial(), round = 0;
+        while (true) {
+            budget.checkTime(dfa.stateCount, bytes);
+            round++;
+            int refined = minimizer.round();
+            if (refined == count) {
+                break;
+            }
+            count = refined;
+        }
+        if (rounds != null) {
+            rounds[0] = round;
+        }
+        return minimizer.classes;
+    }
+
+    /** Finals first, as the initial groups of {@link StateMachine.Graph#minimize}. */
+    private int initial() {
+        boolean anyFinal = false, anyOther = false;
+        for (int s = 0; s < n; s++) {
+            anyFinal |= finals[s];
+            anyOther |= !finals[s];
+        }
+        int others = anyFinal ? 1 : 0;
+        for (int s = 0; s < n; s++) {
+            classes[s] = finals[s] ? 0 : others;
+        }
+        return (anyFinal ? 1 : 0) + (anyOther ? 1 : 0);
+    }
+
+    /** Splits every class by signature; returns the new class count. */
+    private int round() {
+        run(this::clearTable, keys.length(), THRESHOLD);
+        run(this::insert, n, THRESHOLD);
+        ConcurrentLinkedQueue<Integer> collisions = new ConcurrentLinkedQueue<>();
+        run((from, to) -> resolve(from, to, collisions), n, THRESHOLD);
+        if (!collisions.isEmpty()) {
+            separate(collisions);
+        }
+
+        int chunks = chunkStarts.length - 1;
+        run(this::countRepresentatives, chunks, 1);
+        for (int c = 0; c < chunks; c++) {
+            chunkStarts[c + 1] += chunkStarts[c];
+        }
+        int count = chunkStarts[chunks];
+        long[] order = new long[count];
+        run((from, to) -> collectRepresentatives(from, to, order), chunks, 1);
+        pool.invoke(ForkJoinTask.adapt(() -> Arrays.parallelSort(order)));
+
+        run((from, to) -> {
+            for (int p = from; p < to; p++) {
+                ids[byRank[(int)order[p]]] = p;
+            }
+        }, count, THRESHOLD);
+        run((from, to) -> {
+            for (int s = from; s < to; s++) {
+                representatives[s] = ids[representatives[s]];
+            }
+        }, n, THRESHOLD);
+        int[] refined = representatives;
+        representatives = classes;
+        classes = refined;
+        return count;
+    }
+
+    private void clearTable(int from, int to) {
+        for (int i = from; i < to; i++) {
+            keys.set(i, 0);
+            lowest.set(i, Integer.MAX_VALUE);
+        }
+    }
+
+    private void insert(int from, int to) {
+        for (int s = from; s < to; s++) {
+            long hash = hash(s);
+            int i = (int)(hash ^ (hash >>> 32)) & mask;
+            while (true) {
+                long key = keys.get(i);
+                if (key == 0 && keys.compareAndSet(i, 0, hash)) {
+                    key = hash;
+                } else if (key == 0) {
+                    key = keys.get(i);
+                }
+                if (key == hash) {
+                    break;
+                }
+                i = (i + 1) & mask;
+            }
+            int r = rank[s], current = lowest.get(i);
+            while (r < current && !lowest.compareAndSet(i, current, r)) {
+                current = lowest.get(i);
+            }
+            slots[s] = i;
+        }
+    }
+
+    /** Points every state at the lowest ranked state of its slot, queueing those that only share its hash. */
+    private void resolve(int from, int to, ConcurrentLinkedQueue<Integer> collisions) {
+        for (int s = from; s < to; s++) {
+            int representative = byRank[lowest.get(slots[s])];
+            representatives[s] = representative;
+            isRepresentative[s] = representative == s;
+            if (representative != s && !sameSignature(s, representative)) {
+                collisions.add(s);
+            }
+        }
+    }
+
+    /** Groups the queued states by their full signature, each led by its lowest ranked state. */
+    private void separate(ConcurrentLinkedQueue<Integer> collisions) {
+        Map<List<Integer>, Integer> leaders = new HashMap<>();
+        List<Integer> states = new ArrayList<>(collisions);
+        states.sort((x, y) -> Integer.compare(rank[x], rank[y]));
+        for (int s : states) {
+            List<Integer> signature = new ArrayList<>(k + 1);
+            signature.add(classes[s]);
+            for (int a = 0; a < k; a++) {
+                signature.add(targetClass(s, a));
+            }
+            Integer leader = leaders.putIfAbsent(signature, s);
+            representatives[s] = leader != null ? leader : s;
+            isRepresentative[s] = leader == null;
+        }
+    }
+
+    private void countRepresentatives(int from, int to) {
+        for (int c = from; c < to; c++) {
+            int count = 0;
+            for (int s = c * THRESHOLD, end = Math.min(s + THRESHOLD, n); s < end; s++) {
+                if (isRepresentative[s]) {
+                    count++;
+                }
+            }
+            chunkStarts[c + 1] = count;
+        }
+    }
+
+    /** Writes {@code oldClass << 32 | rank} of every representative, chunk by chunk. */
+    private void collectRepresentatives(int from, int to, long[] order) {
+        for (int c = from; c < to; c++) {
+            int p = chunkStarts[c];
+            for (int s = c * THRESHOLD, end = Math.min(s + THRESHOLD, n); s < end; s++) {
+                if (isRepresentative[s]) {
+                    order[p++] = (long)classes[s] << 32 | rank[s];
+                }
+            }
+        }
+    }
+
+    private long hash(int s) {
+        long h = classes[s] + 1;
+        for (int a = 0; a < k; a++) {
+            h = h * 0x9E3779B97F4A7C15L + targetClass(s, a) + 2;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h != 0 ? h : 1;
+    }
+
+    private boolean sameSignature(int s, int t) {
+        if (classes[s] != classes[t]) {
+            return false;
+        }
+        for (int a = 0; a < k; a++) {
+            if (targetClass(s, a) != targetClass(t, a)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int targetClass(int s, int a) {
+        int target = transitions[s * k + a];
+        return target >= 0 ? classes[target] : -1;
+    }
+
+    private interface Body {
+        void run(int from, int to);
+    }
+
+    /** Runs {@code body} over {@code 0..size-1} in ranges of at most {@code grain}. */
+    private void run(Body body, int size, int grain) {
+        pool.invoke(new Range(body, 0, size, grain));
+    }
+
+    private static final class Range extends RecursiveAction {
+        private final Body body;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        Range(Body body, int from, int to, int grain) {
+            this.body = body;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                body.run(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Range(body, from, mid, grain), new Range(body, mid, to, grain));
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package stateMachine;
+
+/**
+ * Receives figures from the phases that build and run automata. Every method
+ * does nothing by default; implement the ones of interest and install the
+ * listener with {@link Instrumentation#setListener}. Calls are made once per
+ * phase or batch, never per input symbol, possibly from several threads.
+ */
+interface PhaseListener {
+    PhaseListener NONE = new PhaseListener() {};
+
+    /** A graph text was loaded. */
+    default void parsed(int lines, int nodes, int edges, int symbols, long nanos) {}
+
+    /**
+     * Subset construction finished. {@code builtStates} counts every subset
+     * created, the peak of the construction, {@code dfaStates} those kept;
+     * {@code estimatedBytes} roughly sizes the subset table at its peak.
+     */
+    default void determinized(int nfaStates, int builtStates, int dfaStates, long estimatedBytes,
+                              long nanos) {}
+
+    /** Minimization finished; {@code rounds} counts Moore rounds or Hopcroft splitters. */
+    default void minimized(StateMachine.Graph.MinimizeEngine engine, int states, int classes,
+                           int rounds, long nanos) {}
+
+    default void batchMatched(BatchMatcher.Stats stats) {}
+}
@@ -0,0 +1,188 @@
+package stateMachine;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+
+/**
+ * Boolean operations on deterministic graphs by product construction over
+ * the union of their alphabets. A missing transition is read as a move to a
+ * rejecting sink. Only pairs reachable from the pair of initial states are
+ * built; each pair is keyed by its two state numbers packed into a
+ * {@code long}, and pairs that can only reject are never materialized, so
+ * edges into them are left missing. With {@code minimize} set, the product
+ * table is minimized by {@link HopcroftMinimizer} before any graph node is
+ * created. The results are deterministic graphs named {@code P1..Pk} in
+ * breadth-first order from the initial state {@code P1}.
+ */
+final class Product {
+    private static final int INTERSECTION = 0;
+    private static final int UNION = 1;
+    private static final int DIFFERENCE = 2;
+
+    private Product() {}
+
+    static StateMachine.Graph intersection(StateMachine.Graph x, StateMachine.Graph y, boolean minimize) {
+        return product(x, y, INTERSECTION, minimize);
+    }
+
+    static StateMachine.Graph union(StateMachine.Graph x, StateMachine.Graph y, boolean minimize) {
+        return product(x, y, UNION, minimize);
+    }
+
+    /** Words accepted by {@code x} and not by {@code y}. */
+    static StateMachine.Graph difference(StateMachine.Graph x, StateMachine.Graph y, boolean minimize) {
+        return product(x, y, DIFFERENCE, minimize);
+    }
+
+    /** Words over the alphabet of {@code graph} that it does not accept. */
+    static StateMachine.Graph complement(StateMachine.Graph graph, boolean minimize) {
+        CompiledDfa dfa = graph.compile();
+        int n = dfa.stateCount(), k = dfa.symbolCount(), sink = n;
+        String[] alphabet = new String[k];
+        for (int a = 0; a < k; a++) {
+            alphabet[a] = dfa.symbol(a);
+        }
+        int[] ids = new int[n + 1];
+        Arrays.fill(ids, -1);
+        int[] order = new int[n + 1];
+        int count = 0, start = dfa.initState() >= 0 ? dfa.initState() : sink;
+        ids[start] = count;
+        order[count++] = start;
+        for (int i = 0; i < count; i++) {
+            int s = order[i];
+            for (int a = 0; a < k; a++) {
+                int target = s == sink ? sink : dfa.step(s, a);
+                target = target >= 0 ? target : sink;
+                if (ids[target] == -1) {
+                    ids[target] = count;
+                    order[count++] = target;
+                }
+            }
+        }
+        int[] transitions = new int[count * k];
+        boolean[] finals = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            int s = order[i];
+            finals[i] = s == sink || !dfa.isFinal(s);
+            for (int a = 0; a < k; a++) {
+                int target = s == sink ? sink : dfa.step(s, a);
+                transitions[i * k + a] = ids[target >= 0 ? target : sink];
+            }
+        }
+        return result(alphabet, new Dfa(k, transitions, finals, 0, null), minimize,
+                graph.getLambda());
+    }
+
+    private static StateMachine.Graph product(StateMachine.Graph x, StateMachine.Graph y, int op,
+                                              boolean minimize) {
+        CompiledDfa left = x.compile(), right = y.compile();
+        String[] alphabet = alphabet(left, right);
+        int k = alphabet.length;
+        int[] leftColumns = columns(left, alphabet), rightColumns = columns(right, alphabet);
+
+        LongIntMap ids = new LongIntMap(Math.max(left.stateCount(), right.stateCount()));
+        int[] pairs = new int[32];
+        int[] transitions = new int[16 * k];
+        int count = 0;
+        int init = -1;
+        if (isLive(left.initState(), right.initState(), op)) {
+            ids.putIfAbsent(pack(left.initState(), right.initState()), 0);
+            pairs[0] = left.initState();
+            pairs[1] = right.initState();
+            init = 0;
+            count = 1;
+        }
+        for (int i = 0; i < count; i++) {
+            int p = pairs[2 * i], q = pairs[2 * i + 1];
+            if ((i + 1) * k > transitions.length) {
+                transitions = Arrays.copyOf(transitions, transitions.length * 2);
+            }
+            for (int a = 0; a < k; a++) {
+                int p1 = p >= 0 && leftColumns[a] >= 0 ? left.step(p, leftColumns[a]) : -1;
+                int q1 = q >= 0 && rightColumns[a] >= 0 ? right.step(q, rightColumns[a]) : -1;
+                if (!isLive(p1, q1, op)) {
+                    transitions[i * k + a] = -1;
+                    continue;
+                }
+                int id = ids.putIfAbsent(pack(p1, q1), count);
+                if (id == count) {
+                    if (2 * count + 2 > pairs.length) {
+                        pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                    }
+                    pairs[2 * count] = p1;
+                    pairs[2 * count + 1] = q1;
+                    count++;
+                }
+                transitions[i * k + a] = id;
+            }
+        }
+
+        boolean[] finals = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            int p = pairs[2 * i], q = pairs[2 * i + 1];
+            boolean f1 = p >= 0 && left.isFinal(p), f2 = q >= 0 && right.isFinal(q);
+            finals[i] = op == INTERSECTION ? f1 && f2 : op == UNION ? f1 || f2 : f1 && !f2;
+        }
+        return result(alphabet, new Dfa(k, Arrays.copyOf(transitions, count * k), finals, init, null),
+                minimize, x.getLambda());
+    }
+
+    /** Sorted union of the alphabets of {@code x} and {@code y}. */
+    static String[] alphabet(CompiledDfa x, CompiledDfa y) {
+        TreeSet<String> symbols = new TreeSet<>();
+        for (int a = 0; a < x.symbolCount(); a++) {
+            symbols.add(x.symbol(a));
+        }
+        for (int a = 0; a < y.symbolCount(); a++) {
+            symbols.add(y.symbol(a));
+        }
+        return symbols.toArray(new String[0]);
+    }
+
+    /** Column of {@code dfa} for every symbol of {@code alphabet}, or -1. */
+    static int[] columns(CompiledDfa dfa, String[] alphabet) {
+        int[] columns = new int[alphabet.length];
+        for (int a = 0; a < alphabet.length; a++) {
+            columns[a] = dfa.symbolIndex(alphabet[a]);
+        }
+        return columns;
+    }
+
+    /** False if the pair can only reject, whatever follows. */
+    private static boolean isLive(int p, int q, int op) {
+        return op == INTERSECTION ? p >= 0 && q >= 0 : op == UNION ? p >= 0 || q >= 0 : p >= 0;
+    }
+
+    /** Both states shifted by one so the sink, -1, packs as well and no pair packs to 0. */
+    private static long pack(int p, int q) {
+        return (long)(p + 1) << 32 | (q + 1) & 0xFFFFFFFFL;
+    }
+
+    private static StateMachine.Graph result(String[] alphabet, Dfa dfa, boolean minimize,
+                                             String lambda) {
+        if (minimize && dfa.stateCount > 0) {
+            int[] blocks = new int[dfa.stateCount];
+            int count = HopcroftMinimizer.refine(dfa, blocks);
+            int[] renumber = new int[count];
+            Arrays.fill(renumber, -1);
+            for (int s = 0, next = 0; s < dfa.stateCount; s++) {
+                if (renumber[blocks[s]] == -1) {
+                    renumber[blocks[s]] = next++;
+                }
+                blocks[s] = renumber[blocks[s]];
+            }
+            int k = dfa.symbolCount;
+            int[] transitions = new int[count * k];
+            boolean[] finals = new boolean[count];
+            for (int s = 0; s < dfa.stateCount; s++) {
+                finals[blocks[s]] = dfa.finals[s];
+                for (int a = 0; a < k; a++) {
+                    int target = dfa.next(s, a);
+                    transitions[blocks[s] * k + a] = target >= 0 ? blocks[target] : -1;
+                }
+            }
+            dfa = new Dfa(k, transitions, finals, dfa.initState >= 0 ? blocks[dfa.initState] : -1, null);
+        }
+        return StateMachine.Graph.fromDfa(alphabet, dfa, "P", lambda);
+    }
+}
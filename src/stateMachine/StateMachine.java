@@ -2,29 +2,52 @@ package stateMachine;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class StateMachine {
     static class Graph implements Serializable {
         private List<Node> nodes = new ArrayList<>();
-        private Set<String> edges = new TreeSet<>();
+        private SymbolTable symbols = new SymbolTable();
         private String lambda = "0", initNode = "S";
         private boolean determinized = false;
-        private Graph() {}
+        /** Node named {@link #initNode}, or -1; kept up to date as nodes and the name change. */
+        private int initId = -1;
+        Graph() {}
+
+        enum MinimizeEngine {
+            MOORE, HOPCROFT, PARALLEL
+        }
+
+        /** Approximate bytes of a node besides its names and edges: it, its edge list and its name set. */
+        private static final int NODE_BYTES = 128;
+        /** Approximate bytes of a name in a name set. */
+        private static final int NAME_BYTES = 40;
+        /** Approximate bytes of an edge and its list entry. */
+        private static final int EDGE_BYTES = 48;
 
         private static class Node implements Serializable, Comparable {
+            final int id;
             NodeName name;
+            int nameHash;
             List<Edge> edges;
             boolean isFinal;
             boolean used = false;
-            Node(NodeName name, List<Edge> edges, boolean isFinal) {
-                this.name = new NodeName(name);
+            Node(int id, NodeName name, List<Edge> edges, boolean isFinal) {
+                this.id = id;
+                this.name = name;
+                this.nameHash = name.hashCode();
                 this.edges = edges;
                 this.isFinal = isFinal;
             }
 
+            void rename(NodeName name) {
+                this.name = name;
+                this.nameHash = name.hashCode();
+            }
+
             @Override
             public int hashCode() {
-                return name.hashCode();
+                return nameHash;
             }
 
             @Override
@@ -32,32 +55,6 @@ public class StateMachine {
                 return this.name.equals(((Node)obj).name);
             }
 
-            static int getNodeIndex(NodeName nodeName, List<Node> nodes,
-                                    boolean isFinal) {
-                for (int i = 0; i < nodes.size(); i++) {
-                    if (nodes.get(i).name.equals(new NodeName(nodeName))) {
-                        if (isFinal) {
-                            nodes.get(i).isFinal = true;
-                        }
-                        return i;
-                    }
-                }
-                nodes.add(new Node(new NodeName(nodeName), new LinkedList<>(), isFinal));
-                return nodes.size() - 1;
-            }
-
-            static void makeUnused(List<Node> nodes) {
-                for (Node node : nodes) {
-                    node.used = false;
-                }
-            }
-
-            static void makeEdgesUnused(List<Node> nodes) {
-                for (Node node : nodes) {
-                    Edge.makeUnused(node.edges);
-                }
-            }
-
             @Override
             public String toString() {
                 StringBuilder res = new StringBuilder(
@@ -77,54 +74,28 @@ public class StateMachine {
                 return res.toString();
             }
 
-            static void printNodes(OutputStream os, List<Node> nodes, boolean considerUse) {
-                for (Node node : nodes) {
-                    if (!considerUse || node.used) {
-                        try {
-                            os.write(node.toString().getBytes());
-                            os.write("\n\n".getBytes());
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    }
-                }
-            }
-
             @Override
             public int compareTo(Object obj) {
                 Node node = (Node)obj;
-                return this.hashCode() - node.hashCode();
+                int cmp = Integer.compare(this.nameHash, node.nameHash);
+                return cmp != 0 ? cmp : Integer.compare(this.id, node.id);
             }
         }
         private static class Edge implements Serializable {
             String name;
+            int symbol;
             Node node;
-            boolean used = false;
-            Edge(String name, Node node) {
+            Edge(String name, int symbol, Node node) {
                 this.name = name;
+                this.symbol = symbol;
                 this.node = node;
             }
 
             @Override
             public boolean equals(Object obj) {
-                return this.name.equals(((Edge)obj).name) &&
+                return this.symbol == ((Edge)obj).symbol &&
                         this.node.equals(((Edge)obj).node);
             }
-
-            static void makeUnused(List<Edge> edges) {
-                for (Edge edge : edges) {
-                    edge.used = false;
-                }
-            }
-
-            static int getEdgeIndex(String edge, String[] edges) {
-                for (int i = 0; i < edges.length; i++) {
-                    if (edge.equals(edges[i])) {
-                        return i;
-                    }
-                }
-                return -1;
-            }
         }
 
         private static class NodeName extends TreeSet<String> implements Serializable {
@@ -151,200 +122,352 @@ public class StateMachine {
                 super();
                 this.addAll(nodeName);
             }
+
+            boolean isNamed(String name) {
+                return this.size() == 1 && this.first().equals(name);
+            }
         }
 
-        private static class BooleanHolder {
-            boolean value;
-            BooleanHolder(boolean value) {
-                this.value = value;
+        /**
+         * Reads a graph from {@code is} and closes it.
+         *
+         * @throws GraphFormatException on a malformed line, with its number
+         */
+        static Graph buildGraph(InputStream is) throws IOException {
+            try (Reader reader = new InputStreamReader(is)) {
+                return GraphReader.read(reader);
             }
         }
 
-        private static void simpleBuild(Node node, Node curNode, NodeName[] initOutNodes,
-                                        List<Node> nodes, String[] edges, List<Node> tNodes,
-                                        int chosenEdge, BooleanHolder isFinal) {
-            if (isFinal == null) {
-                isFinal = new BooleanHolder(node.isFinal);
+        String getLambda() {
+            return lambda;
+        }
+
+        void setLambda(String lambda) {
+            this.lambda = lambda;
+        }
+
+        void setInitNode(String initNode) {
+            this.initNode = initNode;
+            this.initId = findInit();
+        }
+
+        String getInitNode() {
+            return initNode;
+        }
+
+        int nodeCount() {
+            return nodes.size();
+        }
+
+        /**
+         * Name of {@code node}: the names it stands for after determinization,
+         * a single one otherwise. Must not be modified.
+         */
+        SortedSet<String> nodeName(int node) {
+            return nodes.get(node).name;
+        }
+
+        boolean isFinal(int node) {
+            return nodes.get(node).isFinal;
+        }
+
+        interface EdgeVisitor {
+            void edge(String symbol, int target) throws IOException;
+        }
+
+        /** Visits the edges of {@code node} in order; lambda edges carry the lambda symbol. */
+        void forEachEdge(int node, EdgeVisitor visitor) throws IOException {
+            for (Edge edge : nodes.get(node).edges) {
+                visitor.edge(edge.name, edge.node.id);
             }
-            node.used = true;
-            NodeName[] outNodes = initOutNodes == null ?
-                    new NodeName[edges.length] : initOutNodes;
+        }
+
+        int addNode(String name) {
+            int id = nodes.size();
+            nodes.add(new Node(id, new NodeName(name), new LinkedList<>(), false));
+            if (initId < 0 && name.equals(initNode)) {
+                initId = id;
+            }
+            return id;
+        }
 
-            for (Edge edge : curNode.edges) {
-                if (edge.used) {
-                    continue;
+        void setFinal(int node) {
+            nodes.get(node).isFinal = true;
+        }
+
+        int addSymbol(String symbol) {
+            return symbols.intern(symbol);
+        }
+
+        /** Adds an edge labelled with an {@link #addSymbol} id, or -1 for lambda. */
+        void addEdge(int from, int to, int symbol) {
+            String name = symbol >= 0 ? symbols.name(symbol) : lambda;
+            nodes.get(from).edges.add(new Edge(name, symbol, nodes.get(to)));
+        }
+
+        /** Node named {@link #getInitNode()}, or -1 if there is none. */
+        int initNodeIndex() {
+            return initId;
+        }
+
+        /** Looks the initial node up by name, only when the nodes or the name are replaced. */
+        private int findInit() {
+            for (Node node : nodes) {
+                if (node.name.isNamed(initNode)) {
+                    return node.id;
                 }
-                int edgeIndex = Edge.getEdgeIndex(edge.name, edges);
-                if (edgeIndex == -1) {
-                    if (edge.node.used) {
-                        continue;
+            }
+            return -1;
+        }
+
+        private Dfa toDfa() {
+            int[] columns = symbols.columns();
+            int[] transitions = new int[nodes.size() * columns.length];
+            Arrays.fill(transitions, -1);
+            boolean[] finals = new boolean[nodes.size()];
+            for (Node node : nodes) {
+                finals[node.id] = node.isFinal;
+                for (Edge edge : node.edges) {
+                    int index = node.id * columns.length + (edge.symbol >= 0 ? columns[edge.symbol] : 0);
+                    if (edge.symbol < 0 || transitions[index] != -1) {
+                        throw new IllegalStateException("Graph not deterministic!");
                     }
-                    if (chosenEdge != -1) {
-                        if (outNodes[chosenEdge] == null) {
-                            outNodes[chosenEdge] = new NodeName(edge.node.name);
-                        } else {
-                            outNodes[chosenEdge].addAll(edge.node.name);
-                        }
+                    transitions[index] = edge.node.id;
+                }
+            }
+            return new Dfa(columns.length, transitions, finals, initNodeIndex(), null);
+        }
+
+        private Nfa toNfa() {
+            int[] columns = symbols.columns();
+            int edgeCount = 0, lambdaCount = 0;
+            for (Node node : nodes) {
+                for (Edge edge : node.edges) {
+                    if (edge.symbol >= 0) {
+                        edgeCount++;
                     } else {
-                        isFinal.value = isFinal.value || edge.node.isFinal;
+                        lambdaCount++;
                     }
-                    simpleBuild(node, edge.node, outNodes, nodes, edges,
-                            tNodes, chosenEdge, isFinal);
-                } else {
-                    if (chosenEdge == -1) {
-                        if (outNodes[edgeIndex] == null) {
-                            outNodes[edgeIndex] = new NodeName(edge.node.name);
-                        } else {
-                            outNodes[edgeIndex].addAll(edge.node.name);
-                        }
-                        edge.used = true;
-                        Node.makeUnused(nodes);
-                        simpleBuild(node, edge.node, outNodes, nodes, edges,
-                                tNodes, edgeIndex, isFinal);
-                    }
-
                 }
             }
-
-            if (node.equals(curNode) && chosenEdge == -1) {
-                int index1 = Node.getNodeIndex(node.name, tNodes, isFinal.value);
-                for (int i = 0; i < edges.length; i++) {
-                    if (outNodes[i] != null) {
-                        int index2 = Node.getNodeIndex(outNodes[i], tNodes, false);
-                        tNodes.get(index1).edges.add(new Edge(edges[i],
-                                tNodes.get(index2)));
+            boolean[] finals = new boolean[nodes.size()];
+            int[] edgeStart = new int[nodes.size() + 1], lambdaStart = new int[nodes.size() + 1];
+            int[] edgeSymbol = new int[edgeCount], edgeTarget = new int[edgeCount],
+                    lambdaTarget = new int[lambdaCount];
+            edgeCount = 0;
+            lambdaCount = 0;
+            for (Node node : nodes) {
+                finals[node.id] = node.isFinal;
+                edgeStart[node.id] = edgeCount;
+                lambdaStart[node.id] = lambdaCount;
+                for (Edge edge : node.edges) {
+                    if (edge.symbol >= 0) {
+                        edgeSymbol[edgeCount] = columns[edge.symbol];
+                        edgeTarget[edgeCount++] = edge.node.id;
+                    } else {
+                        lambdaTarget[lambdaCount++] = edge.node.id;
                     }
                 }
             }
+            edgeStart[nodes.size()] = edgeCount;
+            lambdaStart[nodes.size()] = lambdaCount;
+
+            return new Nfa(finals, columns.length, edgeStart, edgeSymbol, edgeTarget,
+                    lambdaStart, lambdaTarget);
         }
 
-        private static void complexBuild(Node node, String[] edges, List<Node> tNodes) {
-            NodeName[] outNodes = new NodeName[edges.length];
-            boolean isFinal = false;
-            node.used = true;
+        void determinize(boolean deleteUnused) {
+            determinize(deleteUnused, null);
+        }
 
-            if (node.name.size() > 1) {
-                for (String aName : node.name) {
-                    NodeName subName = new NodeName(aName);
-                    int index = Node.getNodeIndex(subName, tNodes, false);
-                    isFinal = isFinal || tNodes.get(index).isFinal;
-                    for (Edge edge : tNodes.get(index).edges) {
-                        int edgeIndex = Edge.getEdgeIndex(edge.name, edges);
-                        if (outNodes[edgeIndex] == null) {
-                            outNodes[edgeIndex] = new NodeName(edge.node.name);
-                        } else {
-                            outNodes[edgeIndex].addAll(edge.node.name);
-                        }
-                    }
+        /** Determinizes on {@code pool}, or sequentially if it is null; the result is the same. */
+        void determinize(boolean deleteUnused, ForkJoinPool pool) {
+            determinize(deleteUnused, pool, Budget.UNLIMITED);
+        }
+
+        /**
+         * Determinizes within {@code budget}; when it is exceeded the graph is
+         * left unchanged and {@link BudgetExceededException} is thrown.
+         */
+        void determinize(boolean deleteUnused, ForkJoinPool pool, Budget budget) {
+            long start = System.nanoTime();
+            String[] aEdges = symbols.sorted();
+            int[] columns = symbols.columns(), symbolIds = new int[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                symbolIds[columns[i]] = i;
+            }
+
+            Nfa nfa = toNfa();
+            Dfa dfa = pool == null ?
+                    Determinizer.determinize(nfa, initNodeIndex(), deleteUnused, budget) :
+                    ParallelDeterminizer.determinize(nfa, initNodeIndex(), deleteUnused, pool, budget);
+            PhaseListener listener = Instrumentation.listener();
+            long estimatedBytes = 0;
+            // the estimate walks every subset, so only when a listener or a budget reads it
+            if (listener != PhaseListener.NONE || budget != Budget.UNLIMITED) {
+                estimatedBytes = dfa.builtStates * (aEdges.length * (long)Integer.BYTES + 64);
+                long names = 0;
+                for (int[] subset : dfa.subsets) {
+                    estimatedBytes += (long)subset.length * Integer.BYTES;
+                    names += Math.max(subset.length, 1);
                 }
+                budget.checkSize(dfa.stateCount, estimatedBytes + graphBytes(dfa, names));
+            }
 
-                int index = Node.getNodeIndex(node.name, tNodes, isFinal);
-                for (int i = 0; i < edges.length; i++) {
-                    if (outNodes[i] != null) {
-                        int index1 = Node.getNodeIndex(outNodes[i], tNodes, false);
-                        tNodes.get(index).edges.add(new Edge(edges[i], tNodes.get(index1)));
+            List<Node> tNodes = new ArrayList<>(dfa.stateCount);
+            int tInit = -1;
+            for (int i = 0; i < dfa.stateCount; i++) {
+                int[] subset = dfa.subsets[i];
+                NodeName name = subset.length == 0 ? new NodeName(initNode) :
+                        new NodeName(nodes.get(subset[0]).name);
+                for (int j = 1; j < subset.length; j++) {
+                    name.addAll(nodes.get(subset[j]).name);
+                }
+                tNodes.add(new Node(i, name, new LinkedList<>(), dfa.finals[i]));
+                if (tInit < 0 && name.isNamed(initNode)) {
+                    tInit = i;
+                }
+            }
+            for (int i = 0; i < dfa.stateCount; i++) {
+                for (int a = 0; a < aEdges.length; a++) {
+                    int target = dfa.next(i, a);
+                    if (target >= 0) {
+                        tNodes.get(i).edges.add(new Edge(aEdges[a], symbolIds[a],
+                                tNodes.get(target)));
                     }
                 }
             }
+            nodes = tNodes;
+            initId = tInit;
+            determinized = true;
+            listener.determinized(nfa.stateCount, dfa.builtStates, dfa.stateCount, estimatedBytes,
+                    System.nanoTime() - start);
+        }
 
-            for (Edge edge : node.edges) {
-                if (!edge.node.used) {
-                    complexBuild(edge.node, edges, tNodes);
+        /**
+         * Estimated heap of the nodes built from {@code dfa} with {@code names}
+         * names in all: every node with its edge list and name set, every name
+         * and every edge.
+         */
+        private static long graphBytes(Dfa dfa, long names) {
+            long edges = 0;
+            for (int target : dfa.transitions) {
+                if (target >= 0) {
+                    edges++;
+                }
+            }
+            return NODE_BYTES * (long)dfa.stateCount + NAME_BYTES * names + EDGE_BYTES * edges;
+        }
+
+        CompiledDfa compile() {
+            return new CompiledDfa(symbols.sorted(), toDfa());
+        }
+
+        /**
+         * Compiled matcher of this graph if it determinizes within
+         * {@code budget}. Past the state or memory limit it falls back to a
+         * {@link LazyDfa} caching about as much as was built, which is not
+         * thread-safe; a deadline or cancellation is still thrown.
+         */
+        Matcher matcher(Budget budget) {
+            String[] alphabet = symbols.sorted();
+            Nfa nfa = toNfa();
+            try {
+                return new CompiledDfa(alphabet,
+                        Determinizer.determinize(nfa, initNodeIndex(), true, budget));
+            } catch (BudgetExceededException e) {
+                if (e.getLimit() != BudgetExceededException.Limit.STATES &&
+                        e.getLimit() != BudgetExceededException.Limit.MEMORY) {
+                    throw e;
                 }
+                return new LazyDfa(alphabet, nfa, initNodeIndex(), e.getBytes());
             }
         }
 
-        static Graph buildGraph(InputStream is) {
+        /** Matcher that determinizes on the fly, caching about {@code cacheBytes} of states. */
+        LazyDfa lazy(long cacheBytes) {
+            return new LazyDfa(symbols.sorted(), toNfa(), initNodeIndex(), cacheBytes);
+        }
+
+        /**
+         * Deterministic graph with the states of {@code dfa}, named
+         * {@code prefix + (index + 1)}, over {@code alphabet} in column order.
+         */
+        static Graph fromDfa(String[] alphabet, Dfa dfa, String prefix, String lambda) {
             Graph graph = new Graph();
-            try (Scanner scanner = new Scanner(is)) {
-                while (scanner.hasNextLine()) {
-                    String line = scanner.nextLine();
-                    if (line.contains("=")) {
-                        String[] symbols = line.split("[ =]+");
-                        if (symbols[0].toLowerCase().equals("lambda")) {
-                            graph.lambda = symbols[1];
-                            continue;
-                        }
-                        if (symbols[0].toLowerCase().equals("initnode")) {
-                            graph.initNode = symbols[1];
-                            continue;
-                        }
-                    }
-                    String[] symbols = line.split("[ ]+");
-                    int index1 = Node.getNodeIndex(new NodeName(symbols[0]), graph.nodes,
-                            symbols.length != 3);
-                    if (symbols.length > 2) {
-                        int index2 = Node.getNodeIndex(new NodeName(symbols[1]),
-                                graph.nodes, false);
-                        graph.nodes.get(index1).edges.add(new Edge(symbols[2],
-                                graph.nodes.get(index2)));
-                        if (!symbols[2].equals(graph.lambda)) {
-                            graph.edges.add(symbols[2]);
-                        }
+            graph.lambda = lambda;
+            int[] symbolIds = new int[alphabet.length];
+            for (int a = 0; a < alphabet.length; a++) {
+                symbolIds[a] = graph.addSymbol(alphabet[a]);
+            }
+            for (int s = 0; s < dfa.stateCount; s++) {
+                graph.addNode(prefix + (s + 1));
+                graph.nodes.get(s).isFinal = dfa.finals[s];
+            }
+            for (int s = 0; s < dfa.stateCount; s++) {
+                for (int a = 0; a < alphabet.length; a++) {
+                    int target = dfa.next(s, a);
+                    if (target >= 0) {
+                        graph.addEdge(s, target, symbolIds[a]);
                     }
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
             }
+            if (dfa.initState >= 0) {
+                graph.initNode = prefix + (dfa.initState + 1);
+                graph.initId = dfa.initState;
+            }
+            graph.determinized = true;
             return graph;
         }
-        void determinize(boolean deleteUnused) {
-            List<Node> tNodes = new ArrayList<>();
-            String[] aEdges = edges.toArray(new String[edges.size()]);
 
-            Node.makeUnused(nodes);
-            for (int i = 0; i < nodes.size(); i++) {
-                Node.makeEdgesUnused(nodes);
-                simpleBuild(nodes.get(i), nodes.get(i),null,
-                        nodes, aEdges, tNodes, -1, null);
+        /**
+         * Editable copy of this deterministic graph that keeps itself minimal;
+         * {@link IncrementalDfa#toGraph()} turns it back into a graph.
+         */
+        IncrementalDfa incremental() {
+            String[] names = new String[nodes.size()];
+            for (Node node : nodes) {
+                names[node.id] = node.name.size() == 1 ? node.name.first() : null;
             }
+            return new IncrementalDfa(symbols.sorted(), toDfa(), names, lambda);
+        }
 
-            Node.makeUnused(nodes);
-            int initNodeIndex = Node.getNodeIndex(new NodeName(initNode), tNodes,
-                    false);
-            complexBuild(tNodes.get(initNodeIndex), aEdges, tNodes);
-
-            if (deleteUnused) {
-                List<Node> resNodes = new ArrayList<>();
-                for (Node node : tNodes) {
-                    if (node.used) {
-                        resNodes.add(node);
-                    }
-                }
-                nodes = resNodes;
-            } else {
-                nodes = tNodes;
-            }
-            determinized = true;
+        /** Matcher that simulates the graph as an NFA over state bitsets. */
+        BitNfa bitNfa() {
+            return new BitNfa(symbols.sorted(), toNfa(), initNodeIndex());
         }
+
         void printGraph(OutputStream os) {
             try {
-                os.write(("initNode = " + initNode + ", lambda = " + lambda + "\n").
-                        getBytes());
+                new GraphExporter(GraphExporter.Format.TEXT).export(this, os);
             } catch (IOException e) {
                 e.printStackTrace();
             }
-            Node.printNodes(os, this.nodes, false);
         }
 
         static Graph copy(Graph graph) {
             if (graph == null) {
                 return null;
             }
-            byte[] arr = null;
-            ByteArrayOutputStream os = new ByteArrayOutputStream();
-            try (ObjectOutputStream oos = new ObjectOutputStream(os)) {
-                oos.writeObject(graph);
-                arr = os.toByteArray();
-            } catch (Exception e) {
-                e.printStackTrace();
+            Graph res = new Graph();
+            res.symbols = new SymbolTable(graph.symbols);
+            res.lambda = graph.lambda;
+            res.initNode = graph.initNode;
+            res.initId = graph.initId;
+            res.determinized = graph.determinized;
+            res.nodes = new ArrayList<>(graph.nodes.size());
+            // node names are replaced, never modified in place, so copies can share them
+            for (Node node : graph.nodes) {
+                Node newNode = new Node(node.id, node.name, new LinkedList<>(), node.isFinal);
+                newNode.used = node.used;
+                res.nodes.add(newNode);
             }
-            Graph res = null;
-            ByteArrayInputStream is = new ByteArrayInputStream(arr);
-            try (ObjectInputStream ois = new ObjectInputStream(is)) {
-                res = (Graph)ois.readObject();
-            } catch (Exception e) {
-                e.printStackTrace();
+            for (Node node : graph.nodes) {
+                List<Edge> newEdges = res.nodes.get(node.id).edges;
+                for (Edge edge : node.edges) {
+                    newEdges.add(new Edge(edge.name, edge.symbol, res.nodes.get(edge.node.id)));
+                }
             }
             return res;
         }
@@ -355,11 +478,11 @@ public class StateMachine {
                 NodeName oldName = nodes.get(i).name;
                 NodeName newName = new NodeName(
                         Character.toString((char)((int)'A' + i)));
-                if (!changed && oldName.equals(new NodeName(initNode))) {
+                if (!changed && i == initId) {
                     initNode = newName.first();
                     changed = true;
                 }
-                nodes.get(i).name = newName;
+                nodes.get(i).rename(newName);
                 if (os != null) {
                     try {
                         os.write((oldName.toString() + " --> " +
@@ -369,6 +492,10 @@ public class StateMachine {
                     }
                 }
             }
+            if (!changed) {
+                // a new name may be the initial one
+                initId = findInit();
+            }
         }
 
         private static boolean equalGroup(Node node1, Node node2, List<Elem> groups) {
@@ -379,7 +506,7 @@ public class StateMachine {
                     it2 = node2.edges.iterator();
             while (it1.hasNext()) {
                 Edge edge1 = it1.next(), edge2 = it2.next();
-                if (!edge1.name.equals(edge2.name)) {
+                if (edge1.symbol != edge2.symbol) {
                     return false;
                 }
                 int index1 = getGroupElemNumber(edge1.node, groups),
@@ -435,6 +562,14 @@ public class StateMachine {
         }
 
         static Graph minimize(Graph graph, OutputStream os) {
+            return moore(graph, os, Budget.UNLIMITED);
+        }
+
+        /** Moore refinement; {@code budget} limits the states and the time, not the memory. */
+        private static Graph moore(Graph graph, OutputStream os, Budget budget) {
+            long start = System.nanoTime();
+            int rounds = 0;
+            budget.checkSize(graph.nodes.size(), 0);
             try {
                 if (!graph.determinized) {
                     throw new Exception("Graph not determinized!");
@@ -451,16 +586,24 @@ public class StateMachine {
                    elem2.add(node);
                }
             }
-            groups.add(elem1);
-            groups.add(elem2);
-            try {
-                os.write(("[Initial]:\n" + groups.toString() + "\n").
-                        getBytes());
-            } catch (IOException e) {
-                e.printStackTrace();
+            // an empty group would have no node to take the edges of its class from
+            if (!elem1.isEmpty()) {
+                groups.add(elem1);
+            }
+            if (!elem2.isEmpty()) {
+                groups.add(elem2);
+            }
+            if (os != null) {
+                try {
+                    os.write(("[Initial]:\n" + groups.toString() + "\n").
+                            getBytes());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
             }
 
             while (true) {
+                rounds++;
                 Groups newGroups = new Groups();
                 for (Elem elem : groups) {
                     boolean[] used = new boolean[elem.size()];
@@ -472,6 +615,8 @@ public class StateMachine {
                             newElem.add(node);
                             int index2 = -1;
                             for (Node node2 : elem) {
+                                // a comparison scans every group, so each one reads the clock
+                                budget.checkTime(graph.nodes.size(), 0);
                                 if (!used[++index2] && equalGroup(node, node2, groups)) {
                                     newElem.add(node2);
                                     used[index2] = true;
@@ -504,12 +649,12 @@ public class StateMachine {
                     for (Elem elem : groups) {
                         index++;
                         NodeName name = new NodeName("N" + Integer.toString(index + 1));
-                        Node node = new Node(name, new LinkedList<>(), false);
+                        Node node = new Node(index, name, new LinkedList<>(), false);
 
-                        NodeName initNodeName = new NodeName(graph.initNode);
                         for (Node elemNode : elem) {
-                            if (elemNode.name.equals(initNodeName)) {
+                            if (elemNode.id == graph.initId) {
                                 res.initNode = node.name.first();
+                                res.initId = index;
                             }
                             if (elemNode.isFinal) {
                                 node.isFinal = true;
@@ -524,12 +669,14 @@ public class StateMachine {
                         Node f = elem.first();
                         for (Edge edge : f.edges) {
                             int index2 = getGroupElemNumber(edge.node, groups);
-                            Edge newEdge = new Edge(edge.name, newNodes.get(index2));
+                            Edge newEdge = new Edge(edge.name, edge.symbol, newNodes.get(index2));
                             newNodes.get(index).edges.add(newEdge);
                         }
                     }
-                    res.edges = graph.edges;
+                    res.symbols = graph.symbols;
                     res.nodes = newNodes;
+                    Instrumentation.listener().minimized(MinimizeEngine.MOORE, graph.nodes.size(),
+                            newNodes.size(), rounds, System.nanoTime() - start);
 
                     return res;
                 } else {
@@ -546,5 +693,139 @@ public class StateMachine {
                 }
             } // end while(true)
         }
+
+        static Graph minimize(Graph graph, OutputStream os, MinimizeEngine engine) {
+            return minimize(graph, os, engine, Budget.UNLIMITED);
+        }
+
+        /**
+         * Minimizes within {@code budget}, throwing {@link BudgetExceededException}
+         * past it; {@link MinimizeEngine#PARALLEL} runs on the common pool.
+         */
+        static Graph minimize(Graph graph, OutputStream os, MinimizeEngine engine, Budget budget) {
+            if (engine == MinimizeEngine.MOORE) {
+                return moore(graph, os, budget);
+            }
+            return partitioned(graph, os, engine, ForkJoinPool.commonPool(), budget);
+        }
+
+        /** Moore refinement with every round spread over {@code pool}; the result is the same. */
+        static Graph minimize(Graph graph, OutputStream os, ForkJoinPool pool, Budget budget) {
+            return partitioned(graph, os, MinimizeEngine.PARALLEL, pool, budget);
+        }
+
+        private static Graph partitioned(Graph graph, OutputStream os, MinimizeEngine engine,
+                                         ForkJoinPool pool, Budget budget) {
+            try {
+                if (!graph.determinized) {
+                    throw new Exception("Graph not determinized!");
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            long start = System.nanoTime();
+            int[] rank = graph.ranks(), rounds = new int[1];
+            Dfa dfa = graph.toDfa();
+            int[] classes = engine == MinimizeEngine.PARALLEL ?
+                    ParallelMinimizer.partition(dfa, rank, pool, budget, rounds) :
+                    HopcroftMinimizer.partition(dfa, rank, rounds, budget);
+            int count = 0;
+            for (int c : classes) {
+                count = Math.max(count, c + 1);
+            }
+            // at most as many edges per class as the table has columns
+            budget.checkSize(count,
+                    (NODE_BYTES + NAME_BYTES + EDGE_BYTES * (long)dfa.symbolCount) * count);
+            Graph res = quotient(graph, classes, rank, os);
+            Instrumentation.listener().minimized(engine, graph.nodes.size(), res.nodes.size(),
+                    rounds[0], System.nanoTime() - start);
+            return res;
+        }
+
+        private int[] ranks() {
+            Integer[] order = new Integer[nodes.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (x, y) -> nodes.get(x).compareTo(nodes.get(y)));
+            int[] rank = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                rank[order[i]] = i;
+            }
+            return rank;
+        }
+
+        private static Graph quotient(Graph graph, int[] classes, int[] rank, OutputStream os) {
+            int count = 0;
+            for (int c : classes) {
+                count = Math.max(count, c + 1);
+            }
+            if (os != null) {
+                Groups initial = new Groups(), groups = new Groups();
+                Elem finals = new Elem(), others = new Elem();
+                List<Elem> elems = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    elems.add(new Elem());
+                }
+                for (int i = 0; i < classes.length; i++) {
+                    Node node = graph.nodes.get(i);
+                    (node.isFinal ? finals : others).add(node);
+                    elems.get(classes[i]).add(node);
+                }
+                // empty groups are left out, as moore leaves them out
+                if (!finals.isEmpty()) {
+                    initial.add(finals);
+                }
+                if (!others.isEmpty()) {
+                    initial.add(others);
+                }
+                groups.addAll(elems);
+                try {
+                    os.write(("[Initial]:\n" + initial.toString() + "\n").getBytes());
+                    if (count == graph.nodes.size()) {
+                        os.write("Impossible to minimize graph!\n".getBytes());
+                    } else {
+                        os.write(("[Final]:\n" + groups.toString() + "\n").getBytes());
+                        os.write("Minimization successfully completed!\n".getBytes());
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            int[] first = new int[count];
+            Arrays.fill(first, -1);
+            Graph res = new Graph();
+            res.lambda = graph.lambda;
+            List<Node> newNodes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                newNodes.add(new Node(i, new NodeName("N" + Integer.toString(i + 1)),
+                        new LinkedList<>(), false));
+            }
+            for (int i = 0; i < classes.length; i++) {
+                int c = classes[i];
+                if (first[c] == -1 || rank[i] < rank[first[c]]) {
+                    first[c] = i;
+                }
+                if (graph.nodes.get(i).isFinal) {
+                    newNodes.get(c).isFinal = true;
+                }
+            }
+            int initNodeIndex = graph.initNodeIndex();
+            if (initNodeIndex != -1) {
+                res.initNode = newNodes.get(classes[initNodeIndex]).name.first();
+                res.initId = classes[initNodeIndex];
+            }
+
+            for (int i = 0; i < count; i++) {
+                for (Edge edge : graph.nodes.get(first[i]).edges) {
+                    newNodes.get(i).edges.add(new Edge(edge.name, edge.symbol,
+                            newNodes.get(classes[edge.node.id])));
+                }
+            }
+            res.symbols = graph.symbols;
+            res.nodes = newNodes;
+            return res;
+        }
     }
 }
@@ -0,0 +1,190 @@
+package stateMachine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+
+/**
+ * Runs a {@link CompiledDfa} over a byte stream that arrives in chunks. Only
+ * the current state and offsets are kept between chunks, so a stream of any
+ * length is matched in constant memory; chunks are read in place, heap and
+ * direct buffers alike, and nothing is allocated per chunk.
+ * <p>
+ * Without a delimiter the whole stream is one input and every accepted prefix
+ * is reported as {@code (0, end)}. With a delimiter every record between two
+ * delimiters is matched on its own and reported as {@code (start, end)} if it
+ * is accepted, the delimiter excluded. Offsets count bytes from the start of
+ * the stream. Not thread-safe; the automaton itself can be shared.
+ */
+final class StreamMatcher {
+    /** Bytes mapped at a time by {@link #feed(FileChannel)}. */
+    private static final long MAP_WINDOW = 1L << 30;
+
+    interface Listener {
+        void matched(long start, long end);
+    }
+
+    private final CompiledDfa dfa;
+    private final int delimiter;
+    private final Listener listener;
+    private int state;
+    private long offset;
+    private long recordStart;
+    private boolean started;
+
+    /** Reports every accepted prefix of the stream. */
+    StreamMatcher(CompiledDfa dfa, Listener listener) {
+        this(dfa, -1, listener);
+    }
+
+    /**
+     * @param delimiter byte value ending every record, or -1 to match the
+     *                  stream as a whole
+     * @throws IllegalArgumentException if {@code delimiter} is not in -1..255
+     */
+    StreamMatcher(CompiledDfa dfa, int delimiter, Listener listener) {
+        if (delimiter < -1 || delimiter > 0xFF) {
+            throw new IllegalArgumentException("delimiter " + delimiter);
+        }
+        this.dfa = dfa;
+        this.delimiter = delimiter;
+        this.listener = listener;
+        reset();
+    }
+
+    /** State after the bytes fed so far, or -1 if the current input can no longer match. */
+    int state() {
+        return state;
+    }
+
+    /** Bytes fed so far. */
+    long offset() {
+        return offset;
+    }
+
+    /** Starts over, as at the beginning of a new stream. */
+    void reset() {
+        offset = 0;
+        recordStart = 0;
+        state = dfa.initState();
+        started = false;
+    }
+
+    /** Matches the remaining bytes of {@code chunk} and moves its position to its limit. */
+    void feed(ByteBuffer chunk) {
+        start();
+        int from = chunk.position(), to = chunk.limit();
+        if (delimiter < 0) {
+            feedPrefixes(chunk, from, to);
+        } else {
+            feedRecords(chunk, from, to);
+        }
+        offset += to - from;
+        chunk.position(to);
+    }
+
+    /**
+     * Reads {@code channel} to its end through {@code buffer}, which is reused
+     * for every read, then calls {@link #finish()}. Returns the bytes read.
+     *
+     * @throws IllegalArgumentException if {@code channel} is in non-blocking
+     *                                  mode, where a read may return nothing
+     *                                  and this would spin; feed its chunks to
+     *                                  {@link #feed(ByteBuffer)} as they arrive
+     */
+    long feed(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        if (channel instanceof SelectableChannel && !((SelectableChannel)channel).isBlocking()) {
+            throw new IllegalArgumentException("non-blocking channel");
+        }
+        long first = offset;
+        buffer.clear();
+        while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            feed(buffer);
+            buffer.clear();
+        }
+        finish();
+        return offset - first;
+    }
+
+    /**
+     * Maps {@code file} from its position to its end window by window, then
+     * calls {@link #finish()}. The position is left at the end, as reading
+     * the channel would leave it.
+     */
+    long feed(FileChannel file) throws IOException {
+        long first = offset, position = file.position(), size = file.size();
+        while (position < size) {
+            long length = Math.min(MAP_WINDOW, size - position);
+            MappedByteBuffer window = file.map(FileChannel.MapMode.READ_ONLY, position, length);
+            feed(window);
+            position += length;
+            file.position(position);
+        }
+        finish();
+        return offset - first;
+    }
+
+    /**
+     * Ends the stream: a last record without a trailing delimiter is matched
+     * now. Call {@link #reset()} before feeding another stream.
+     */
+    void finish() {
+        start();
+        if (delimiter >= 0 && offset > recordStart) {
+            endRecord(offset);
+            recordStart = offset;
+        }
+    }
+
+    /** Reports the empty prefix before the first byte, if it is accepted. */
+    private void start() {
+        if (!started) {
+            started = true;
+            if (delimiter < 0 && state >= 0 && dfa.isFinal(state)) {
+                listener.matched(0, 0);
+            }
+        }
+    }
+
+    private void feedPrefixes(ByteBuffer chunk, int from, int to) {
+        long base = offset - from;
+        int s = state;
+        for (int i = from; i < to && s >= 0; i++) {
+            s = dfa.next(s, chunk.get(i));
+            if (s >= 0 && dfa.isFinal(s)) {
+                listener.matched(0, base + i + 1);
+            }
+        }
+        state = s;
+    }
+
+    private void feedRecords(ByteBuffer chunk, int from, int to) {
+        long base = offset - from;
+        byte end = (byte)delimiter;
+        int s = state;
+        for (int i = from; i < to; i++) {
+            byte b = chunk.get(i);
+            if (b == end) {
+                state = s;
+                endRecord(base + i);
+                s = state;
+            } else if (s >= 0) {
+                s = dfa.next(s, b);
+            }
+        }
+        state = s;
+    }
+
+    /** Reports the record ending at {@code end} if it matched and starts the next one after it. */
+    private void endRecord(long end) {
+        if (state >= 0 && dfa.isFinal(state)) {
+            listener.matched(recordStart, end);
+        }
+        recordStart = end + 1;
+        state = dfa.initState();
+    }
+}
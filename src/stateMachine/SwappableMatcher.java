@@ -0,0 +1,41 @@
+package stateMachine;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holder of a thread-safe {@link Matcher}, such as a {@link CompiledDfa}, that
+ * can be replaced while other threads match. A swap is a single atomic
+ * reference update; every match runs entirely on the automaton that was
+ * current when it started.
+ */
+final class SwappableMatcher implements Matcher {
+    private final AtomicReference<Matcher> current;
+
+    SwappableMatcher(Matcher initial) {
+        this.current = new AtomicReference<>(initial);
+    }
+
+    Matcher get() {
+        return current.get();
+    }
+
+    /** Installs {@code next}, returning the matcher it replaced. */
+    Matcher swap(Matcher next) {
+        return current.getAndSet(next);
+    }
+
+    /** Installs {@code next} only if {@code expected} is still current. */
+    boolean swap(Matcher expected, Matcher next) {
+        return current.compareAndSet(expected, next);
+    }
+
+    @Override
+    public boolean matches(CharSequence input) {
+        return current.get().matches(input);
+    }
+
+    @Override
+    public boolean matches(byte[] input, int offset, int length) {
+        return current.get().matches(input, offset, length);
+    }
+}
@@ -0,0 +1,80 @@
+package stateMachine;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns strings as dense int ids, numbered in order of first appearance.
+ * The sorted order is computed once and cached until a new name is interned.
+ */
+final class SymbolTable implements Serializable {
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    /** Cached {@link #sorted()} and {@link #columns()}, or null after a new name. */
+    private transient String[] sorted;
+    private transient int[] columns;
+
+    SymbolTable() {}
+
+    SymbolTable(SymbolTable table) {
+        ids.putAll(table.ids);
+        names.addAll(table.names);
+    }
+
+    int intern(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+            sorted = null;
+            columns = null;
+        }
+        return id;
+    }
+
+    /** Id of {@code name}, or -1 if it was never interned. */
+    int id(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+
+    String name(int id) {
+        return names.get(id);
+    }
+
+    int size() {
+        return names.size();
+    }
+
+    /** Interned names in sorted order, the column order of compiled automata; a fresh copy. */
+    String[] sorted() {
+        return order().clone();
+    }
+
+    /** Position of every id in {@link #sorted()}; shared, not to be modified. */
+    int[] columns() {
+        if (columns == null) {
+            String[] order = order();
+            int[] positions = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                positions[ids.get(order[i])] = i;
+            }
+            columns = positions;
+        }
+        return columns;
+    }
+
+    private String[] order() {
+        if (sorted == null) {
+            String[] order = names.toArray(new String[names.size()]);
+            Arrays.sort(order);
+            sorted = order;
+        }
+        return sorted;
+    }
+}